@@ -0,0 +1,160 @@
+package ru.vladislav117.fsmanagement;
+
+import ru.vladislav117.fsmanagement.directory.Directory;
+import ru.vladislav117.fsmanagement.file.ContentFile;
+import ru.vladislav117.fsmanagement.file.WriteBehind;
+import ru.vladislav117.fsmanagement.metrics.FSListener;
+import ru.vladislav117.fsmanagement.metrics.FSMetrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Пакетные запросы к файловой системе.
+ * Запросы группируются по родительской директории. Если группа велика и покрывает заметную часть директории,
+ * отсутствующие объекты определяются одним получением содержимого директории, а существующие проверяются как обычно,
+ * поэтому результат совпадает с {@link FSObject#exists()} при любом размере группы. Файлы, контент которых ожидает
+ * отложенной записи, существуют, даже если их ещё нет в директории.
+ * Независимые группы обрабатываются параллельно.
+ */
+final class FSBatch {
+    static final int LISTING_THRESHOLD = 16;
+    static final int LISTING_RATIO = 4;
+    static final int BYTES_PER_ENTRY = 32;
+
+    private FSBatch() {
+    }
+
+    /**
+     * Группа объектов с общей родительской директорией.
+     */
+    static final class Group {
+        final java.io.File parent;
+        final List<Integer> indices = new ArrayList<>();
+
+        Group(java.io.File parent) {
+            this.parent = parent;
+        }
+    }
+
+    static List<Group> group(FSObject[] objects) {
+        Map<java.io.File, Group> groups = new LinkedHashMap<>();
+        for (int i = 0; i < objects.length; i++) {
+            java.io.File parent = objects[i].location.getAbsoluteFile().getParentFile();
+            groups.computeIfAbsent(parent, Group::new).indices.add(i);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    static boolean isPlainName(String name) {
+        return !name.isEmpty() && !name.equals(".") && !name.equals("..");
+    }
+
+    /**
+     * Приведение имени к виду, одинаковому для имён, которые файловая система может считать равными:
+     * без учёта регистра и формы нормализации Unicode.
+     */
+    static String fold(String name) {
+        return Normalizer.normalize(name, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Оценка количества объектов директории по её размеру и количеству жёстких ссылок.
+     *
+     * @return Оценка количества объектов или -1, если оценить нельзя.
+     */
+    static long estimateEntries(java.io.File directory) {
+        Path path = directory.toPath();
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attributes.isDirectory() || attributes.size() <= 0) return -1;
+            long estimate = attributes.size() / BYTES_PER_ENTRY;
+            try {
+                Object links = Files.getAttribute(path, "unix:nlink");
+                if (links instanceof Integer) estimate = Math.max(estimate, (Integer) links - 2);
+            } catch (UnsupportedOperationException | IllegalArgumentException ignored) {
+            }
+            return estimate;
+        } catch (IOException exception) {
+            return -1;
+        }
+    }
+
+    /**
+     * Получение приведённых имён объектов директории, если одно получение содержимого дешевле отдельных запросов.
+     * Содержимое получается, только если группа велика и составляет не меньше четверти оценки размера директории.
+     *
+     * @return Приведённые имена объектов директории или null, если объекты следует проверять по отдельности.
+     */
+    static Set<String> listNames(Group group) {
+        if (group.parent == null || group.indices.size() < LISTING_THRESHOLD) return null;
+        long entries = estimateEntries(group.parent);
+        if (entries < 0 || entries > (long) group.indices.size() * LISTING_RATIO) return null;
+        String[] names = group.parent.list();
+        if (names == null) return new HashSet<>();
+        Set<String> folded = new HashSet<>(names.length * 2);
+        for (String name : names) folded.add(fold(name));
+        return folded;
+    }
+
+    /**
+     * Проверка, ожидает ли контент объекта отложенной записи.
+     */
+    static boolean isPending(FSObject object) {
+        if (!(object instanceof ContentFile<?> file)) return false;
+        WriteBehind writeBehind = file.getWriteBehind();
+        return writeBehind != null && writeBehind.isPending(file);
+    }
+
+    static boolean[] exists(Collection<? extends FSObject> objects) {
+        FSObject[] array = objects.toArray(new FSObject[0]);
+        boolean[] result = new boolean[array.length];
+        List<Group> groups = group(array);
+        (groups.size() > 1 ? groups.parallelStream() : groups.stream()).forEach(group -> {
+            Set<String> names = listNames(group);
+            int avoided = 0;
+            for (int index : group.indices) {
+                String name = array[index].location.getName();
+                if (names != null && isPlainName(name) && !names.contains(fold(name)) && !isPending(array[index])) {
+                    avoided++;
+                    continue;
+                }
+                result[index] = array[index].exists();
+            }
+            FSListener listener = FSMetrics.getListener();
+            if (listener != null && avoided > 1) listener.onSyscallsAvoided(new Directory(group.parent), avoided - 1);
+        });
+        return result;
+    }
+
+    /**
+     * Получение атрибутов объектов. Содержимое директорий не используется: оно не содержит атрибутов, поэтому
+     * каждый объект всё равно пришлось бы запросить отдельно.
+     */
+    static List<BasicFileAttributes> stat(Collection<? extends FSObject> objects) {
+        FSObject[] array = objects.toArray(new FSObject[0]);
+        BasicFileAttributes[] result = new BasicFileAttributes[array.length];
+        List<Group> groups = group(array);
+        (groups.size() > 1 ? groups.parallelStream() : groups.stream()).forEach(group -> {
+            for (int index : group.indices) {
+                try {
+                    result[index] = Files.readAttributes(array[index].location.toPath(), BasicFileAttributes.class);
+                } catch (IOException ignored) {
+                }
+            }
+        });
+        return Arrays.asList(result);
+    }
+}
@@ -1,8 +1,13 @@
 package ru.vladislav117.fsmanagement;
 
+import org.jetbrains.annotations.Nullable;
 import ru.vladislav117.fsmanagement.directory.Directory;
 import ru.vladislav117.fsmanagement.file.File;
 
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Объект файловой системы. Имеет своё расположение.
  */
@@ -173,6 +178,45 @@ public abstract class FSObject {
         return location.exists();
     }
 
+    /**
+     * Проверка на существование нескольких объектов.
+     * Объекты группируются по родительской директории. Если группа покрывает заметную часть директории, отсутствующие
+     * объекты определяются одним получением её содержимого. Результат всегда совпадает с {@link #exists()}.
+     * Независимые группы проверяются параллельно.
+     *
+     * @param objects Объекты
+     * @return Существование каждого объекта в порядке перебора коллекции.
+     */
+    public static boolean[] existsEach(Collection<? extends FSObject> objects) {
+        return FSBatch.exists(objects);
+    }
+
+    /**
+     * Проверка на существование всех объектов.
+     *
+     * @param objects Объекты
+     * @return Существуют ли все объекты.
+     * @see #existsEach(Collection)
+     */
+    public static boolean existsAll(Collection<? extends FSObject> objects) {
+        for (boolean exists : FSBatch.exists(objects)) {
+            if (!exists) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Получение атрибутов нескольких объектов.
+     * Атрибуты запрашиваются для каждого объекта отдельно, группы по родительской директории обрабатываются параллельно.
+     *
+     * @param objects Объекты
+     * @return Атрибуты каждого объекта в порядке перебора коллекции. Для несуществующих объектов null.
+     * @see #existsEach(Collection)
+     */
+    public static List<@Nullable BasicFileAttributes> stat(Collection<? extends FSObject> objects) {
+        return FSBatch.stat(objects);
+    }
+
     /**
      * Получение имени объекта.
      *
@@ -0,0 +1,132 @@
+package ru.vladislav117.fsmanagement.buffer;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Пул прямых буферов байтов.
+ * Буферы разбиты на классы размеров, являющихся степенями двойки. Каждый поток хранит собственный небольшой запас
+ * буферов каждого класса, поэтому получение и возврат буфера не требуют синхронизации.
+ * Буферы больше максимального класса не кешируются.
+ * Пул помнит выданные и ещё не возвращённые буферы, поэтому повторный возврат буфера, возврат его части или чужого
+ * буфера ничего не делает, и один буфер не может достаться двум получателям. Выданные буферы запоминаются по слабым
+ * ссылкам, поэтому невозвращённый буфер освобождается сборщиком мусора как обычно.
+ */
+public class ByteBufferPool {
+    protected static final int MIN_CLASS_SHIFT = 12;
+    protected static final int MAX_CLASS_SHIFT = 22;
+    protected static final ByteBufferPool DEFAULT = new ByteBufferPool(4);
+
+    protected final int maxBuffersPerClass;
+    protected final ThreadLocal<ArrayDeque<ByteBuffer>[]> caches;
+    protected final Set<IssuedBuffer> issued = ConcurrentHashMap.newKeySet();
+    protected final ReferenceQueue<ByteBuffer> collected = new ReferenceQueue<>();
+
+    /**
+     * Создание пула.
+     *
+     * @param maxBuffersPerClass Максимальное количество хранимых буферов каждого класса в одном потоке
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ByteBufferPool(int maxBuffersPerClass) {
+        this.maxBuffersPerClass = maxBuffersPerClass;
+        caches = ThreadLocal.withInitial(() -> {
+            ArrayDeque<ByteBuffer>[] deques = new ArrayDeque[MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1];
+            for (int i = 0; i < deques.length; i++) deques[i] = new ArrayDeque<>(maxBuffersPerClass);
+            return deques;
+        });
+    }
+
+    /**
+     * Получение пула по умолчанию.
+     *
+     * @return Пул по умолчанию.
+     */
+    public static ByteBufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Получение максимального размера буфера, который может храниться в пуле.
+     *
+     * @return Максимальный размер буфера в байтах.
+     */
+    public static int getMaxPooledCapacity() {
+        return 1 << MAX_CLASS_SHIFT;
+    }
+
+    protected static int classIndex(int capacity) {
+        if (capacity <= 1 << MIN_CLASS_SHIFT) return 0;
+        int shift = 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        return shift > MAX_CLASS_SHIFT ? -1 : shift - MIN_CLASS_SHIFT;
+    }
+
+    /**
+     * Получение буфера.
+     * Позиция буфера равна 0, а предел равен запрошенному размеру. Ёмкость может быть больше запрошенной.
+     *
+     * @param size Необходимый размер в байтах
+     * @return Буфер.
+     */
+    public ByteBuffer acquire(int size) {
+        int index = classIndex(size);
+        if (index == -1) return ByteBuffer.allocateDirect(size);
+        ByteBuffer buffer = caches.get()[index].pollFirst();
+        if (buffer == null) buffer = ByteBuffer.allocateDirect(1 << (index + MIN_CLASS_SHIFT));
+        buffer.clear().limit(size);
+        expungeCollected();
+        issued.add(new IssuedBuffer(buffer, collected));
+        return buffer;
+    }
+
+    /**
+     * Возврат буфера в пул. После возврата буфер нельзя использовать.
+     * Буферы, не выданные этим пулом или уже возвращённые, игнорируются.
+     *
+     * @param buffer Буфер
+     */
+    public void release(ByteBuffer buffer) {
+        if (!buffer.isDirect() || buffer.isReadOnly()) return;
+        int index = classIndex(buffer.capacity());
+        if (index == -1 || buffer.capacity() != 1 << (index + MIN_CLASS_SHIFT)) return;
+        if (!issued.remove(new IssuedBuffer(buffer, null))) return;
+        ArrayDeque<ByteBuffer> cache = caches.get()[index];
+        if (cache.size() < maxBuffersPerClass) cache.offerFirst(buffer);
+    }
+
+    protected void expungeCollected() {
+        Reference<? extends ByteBuffer> reference;
+        while ((reference = collected.poll()) != null) issued.remove(reference);
+    }
+
+    /**
+     * Слабая ссылка на выданный буфер, сравниваемая по идентичности буфера.
+     * Содержимое буфера меняется, поэтому его собственные equals и hashCode для этого не подходят.
+     */
+    protected static final class IssuedBuffer extends WeakReference<ByteBuffer> {
+        protected final int hash;
+
+        protected IssuedBuffer(ByteBuffer buffer, ReferenceQueue<ByteBuffer> queue) {
+            super(buffer, queue);
+            hash = System.identityHashCode(buffer);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) return true;
+            if (!(object instanceof IssuedBuffer other)) return false;
+            ByteBuffer buffer = get();
+            return buffer != null && buffer == other.get();
+        }
+    }
+}
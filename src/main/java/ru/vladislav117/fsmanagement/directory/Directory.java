@@ -1,17 +1,30 @@
 package ru.vladislav117.fsmanagement.directory;
 
 import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.Nullable;
 import ru.vladislav117.fsmanagement.FSObject;
+import ru.vladislav117.fsmanagement.file.BinaryFile;
+import ru.vladislav117.fsmanagement.file.ContentFile;
 import ru.vladislav117.fsmanagement.file.File;
+import ru.vladislav117.fsmanagement.metrics.FSListener;
+import ru.vladislav117.fsmanagement.metrics.FSMetrics;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.zip.Deflater;
 
 /**
  * Директория.
  */
 public class Directory extends FSObject {
+    /**
+     * Префикс имён служебных объектов библиотеки, например теневых директорий транзакций.
+     * Такие объекты не попадают в содержимое директории, сведения о занимаемом месте и архивы.
+     */
+    public static final String INTERNAL_PREFIX = ".fsm-";
+
     /**
      * Создание директории.
      *
@@ -137,13 +150,132 @@ public class Directory extends FSObject {
 
     @Override
     public Directory delete() {
+        FSListener listener = FSMetrics.getListener();
+        long start = listener == null ? 0 : System.nanoTime();
         try {
             FileUtils.deleteDirectory(location);
-        } catch (IOException ignored) {
+            if (listener != null) listener.onDelete(this, System.nanoTime() - start);
+        } catch (IOException exception) {
+            if (listener != null) listener.onSuppressedError(this, exception);
         }
         return this;
     }
 
+    /**
+     * Упаковка содержимого директории в zip-архив.
+     * Архив может находиться внутри директории, в этом случае он не попадёт сам в себя.
+     * Символические ссылки пропускаются.
+     *
+     * @param archive Файл архива, который будет создан или заменён
+     * @return Эта же директория.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public Directory packTo(BinaryFile archive) {
+        return packTo(archive, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Упаковка содержимого директории в zip-архив.
+     *
+     * @param archive          Файл архива, который будет создан или заменён
+     * @param compressionLevel Уровень сжатия от 0 до 9
+     * @return Эта же директория.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public Directory packTo(BinaryFile archive, int compressionLevel) {
+        try {
+            DirectoryArchive.pack(this, archive, compressionLevel);
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+        return this;
+    }
+
+    /**
+     * Распаковка zip-архива в директорию. Существующие файлы с такими же путями заменяются.
+     *
+     * @param archive Файл архива
+     * @return Эта же директория.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public Directory unpackFrom(BinaryFile archive) {
+        try {
+            DirectoryArchive.unpack(this, archive);
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+        return this;
+    }
+
+    /**
+     * Начало транзакции записи нескольких файлов директории.
+     * Перед началом восстанавливаются незавершённые транзакции.
+     * Фиксация согласована для других транзакций, но не для читателей, обращающихся к файлам напрямую,
+     * см. {@link DirectoryTransaction}.
+     *
+     * @return Транзакция.
+     */
+    public DirectoryTransaction transaction() {
+        DirectoryTransaction.recover(this);
+        return new DirectoryTransaction(this);
+    }
+
+    /**
+     * Восстановление незавершённых транзакций директории.
+     * Транзакции, журнал которых был записан, завершаются, остальные отменяются.
+     *
+     * @return Эта же директория.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public Directory recoverTransactions() {
+        DirectoryTransaction.recover(this);
+        return this;
+    }
+
+    /**
+     * Вычисление занимаемого директорией места.
+     * В отчёт попадают 10 крупнейших поддиректорий верхнего уровня.
+     *
+     * @return Сведения о занимаемом месте.
+     */
+    public DirectoryUsage usage() {
+        return usage(1, 10, false);
+    }
+
+    /**
+     * Вычисление занимаемого директорией места.
+     *
+     * @param maxDepth Максимальная глубина поддиректорий, попадающих в отчёт
+     * @param top      Количество крупнейших поддиректорий в отчёте
+     * @return Сведения о занимаемом месте.
+     */
+    public DirectoryUsage usage(int maxDepth, int top) {
+        return usage(maxDepth, top, false);
+    }
+
+    /**
+     * Вычисление занимаемого директорией места.
+     * Символические ссылки не разыменовываются.
+     *
+     * @param maxDepth Максимальная глубина поддиректорий, попадающих в отчёт
+     * @param top      Количество крупнейших поддиректорий в отчёте
+     * @param parallel Обходить ли поддиректории верхнего уровня параллельно
+     * @return Сведения о занимаемом месте.
+     */
+    public DirectoryUsage usage(int maxDepth, int top, boolean parallel) {
+        return DirectoryUsage.compute(this, maxDepth, top, parallel);
+    }
+
+    /**
+     * Проверка, является ли объект служебным объектом библиотеки.
+     *
+     * @param name Имя объекта
+     * @return Является ли объект служебным.
+     */
+    static boolean isInternal(String name) {
+        return name.startsWith(INTERNAL_PREFIX);
+    }
+
     /**
      * Получение объектов файловой системы в директории, исключая поддиректории.
      *
@@ -151,13 +283,17 @@ public class Directory extends FSObject {
      * @return Найденные объекты файловой системы.
      */
     protected ArrayList<FSObject> entryFSObjectsAtTopLevel(FSObject root) {
+        FSListener listener = FSMetrics.getListener();
+        long start = listener == null ? 0 : System.nanoTime();
         java.io.File[] files = root.getLocation().listFiles();
         if (files == null) return new ArrayList<>();
         ArrayList<FSObject> directoryEntries = new ArrayList<>();
         for (java.io.File file : files) {
+            if (isInternal(file.getName())) continue;
             if (file.isDirectory()) directoryEntries.add(new Directory(file));
             if (file.isFile()) directoryEntries.add(new File(file));
         }
+        if (listener != null) listener.onList(root, directoryEntries.size(), System.nanoTime() - start);
         return directoryEntries;
     }
 
@@ -185,6 +321,30 @@ public class Directory extends FSObject {
         return entryFSObjectsAtTopLevel(this);
     }
 
+    /**
+     * Получение первой страницы отсортированного содержимого директории, исключая поддиректории.
+     *
+     * @param order    Порядок сортировки
+     * @param pageSize Размер страницы
+     * @return Страница.
+     */
+    public DirectoryPage getPage(DirectorySortOrder order, int pageSize) {
+        return DirectoryPage.load(this, order, pageSize, null);
+    }
+
+    /**
+     * Получение страницы отсортированного содержимого директории, исключая поддиректории.
+     * Память зависит только от размера страницы, поэтому метод подходит для директорий с огромным количеством объектов.
+     *
+     * @param order    Порядок сортировки
+     * @param pageSize Размер страницы
+     * @param after    Позиция, полученная с предыдущей страницей, или null для первой страницы
+     * @return Страница.
+     */
+    public DirectoryPage getPage(DirectorySortOrder order, int pageSize, @Nullable DirectoryCursor after) {
+        return DirectoryPage.load(this, order, pageSize, after);
+    }
+
     /**
      * Получение файлов внутри директории, исключая поиск в поддиректориях.
      *
@@ -245,23 +405,52 @@ public class Directory extends FSObject {
 
     /**
      * Получение объектов файловой системы в директории, включая все поддиректории.
-     * Директории не будут добавлены в результаты поиска.
+     * Символические ссылки разыменовываются, но каждая директория посещается только один раз.
      *
      * @param root Корень, в котором будет произведён поиск
      * @return Найденные объекты файловой системы.
      */
     static ArrayList<FSObject> entryFSObjectsRecursively(FSObject root) {
-        java.io.File[] files = root.getLocation().listFiles();
-        if (files == null) return new ArrayList<>();
-        ArrayList<FSObject> fsObjects = new ArrayList<>();
-        for (java.io.File file : files) {
-            FSObject fsObject = null;
-            if (file.isDirectory()) fsObject = new Directory(file);
-            if (file.isFile()) fsObject = new File(file);
-            fsObjects.add(fsObject);
-            if (fsObject.isDirectory()) fsObjects.addAll(entryFSObjectsRecursively(fsObject));
-        }
-        return fsObjects;
+        return new DirectoryTraversal(root.asDirectory()).collect();
+    }
+
+    /**
+     * Получение обхода директории, включая все поддиректории.
+     * Обход можно настроить перед использованием.
+     *
+     * @return Обход директории.
+     */
+    public DirectoryTraversal traverse() {
+        return new DirectoryTraversal(this);
+    }
+
+    /**
+     * Чтение всех файлов директории, включая файлы в поддиректориях, с упреждением.
+     *
+     * @param fileType         Тип файла
+     * @param readAhead        Максимальное количество файлов, читаемых заранее
+     * @param maxBytesInFlight Максимальный суммарный размер файлов, читаемых заранее
+     * @param <FileClass>      Класс файла
+     * @param <Content>        Тип контента
+     * @return Итератор прочитанных файлов, который необходимо закрыть после использования.
+     */
+    public <FileClass extends ContentFile<Content>, Content> DirectoryPrefetcher<FileClass, Content> prefetch(Class<FileClass> fileType, int readAhead, long maxBytesInFlight) {
+        return new DirectoryPrefetcher<>(traverse(), file -> file.as(fileType), readAhead, maxBytesInFlight);
+    }
+
+    /**
+     * Чтение всех файлов директории, включая файлы в поддиректориях, с упреждением.
+     * Позволяет настроить файлы перед чтением, например установить кодировку текстовых файлов.
+     *
+     * @param factory          Преобразование найденного файла в файл нужного класса
+     * @param readAhead        Максимальное количество файлов, читаемых заранее
+     * @param maxBytesInFlight Максимальный суммарный размер файлов, читаемых заранее
+     * @param <FileClass>      Класс файла
+     * @param <Content>        Тип контента
+     * @return Итератор прочитанных файлов, который необходимо закрыть после использования.
+     */
+    public <FileClass extends ContentFile<Content>, Content> DirectoryPrefetcher<FileClass, Content> prefetch(Function<File, FileClass> factory, int readAhead, long maxBytesInFlight) {
+        return new DirectoryPrefetcher<>(traverse(), factory, readAhead, maxBytesInFlight);
     }
 
     /**
@@ -0,0 +1,223 @@
+package ru.vladislav117.fsmanagement.directory;
+
+import ru.vladislav117.fsmanagement.file.BinaryFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Упаковка дерева директории в zip-архив и распаковка из него.
+ * При упаковке обход дерева, чтение файлов и сжатие выполняются одновременно: отдельный поток обходит дерево,
+ * пул потоков заранее читает небольшие файлы, а вызывающий поток сжимает и записывает их в архив.
+ * Объём заранее прочитанных данных ограничен, а крупные файлы читаются потоково при записи.
+ * Символические ссылки не упаковываются: zip не хранит их переносимо, а упаковка цели по ссылке могла бы вывести
+ * архив за пределы директории или зациклить его. Ссылка пропускается вместе с тем, на что она указывает.
+ * Архив записывается во временный файл рядом с целевым и заменяет его только после успешного завершения, поэтому
+ * неудачная упаковка не портит прежний архив.
+ * При распаковке объекты не создаются через символические ссылки, уже существующие в целевой директории, поэтому
+ * архив не может записать файлы за её пределами.
+ */
+final class DirectoryArchive {
+    static final int SMALL_FILE_SIZE = 1024 * 1024;
+    static final int MAX_BYTES_IN_FLIGHT = 32 * 1024 * 1024;
+    static final int MAX_ENTRIES_IN_FLIGHT = 256;
+    static final int READER_THREADS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+    private DirectoryArchive() {
+    }
+
+    /**
+     * Элемент архива, подготовленный к записи.
+     */
+    static final class Entry {
+        static final Entry END = new Entry(null, null, null, null, 0);
+
+        final String name;
+        final Path path;
+        final FileTime lastModifiedTime;
+        final byte[] content;
+        final int reservedBytes;
+
+        Entry(String name, Path path, FileTime lastModifiedTime, byte[] content, int reservedBytes) {
+            this.name = name;
+            this.path = path;
+            this.lastModifiedTime = lastModifiedTime;
+            this.content = content;
+            this.reservedBytes = reservedBytes;
+        }
+    }
+
+    static void pack(Directory directory, BinaryFile archive, int level) throws IOException {
+        Path root = directory.getLocation().toPath().toAbsolutePath().normalize();
+        Path archivePath = archive.getLocation().toPath().toAbsolutePath().normalize();
+        BlockingQueue<CompletableFuture<Entry>> queue = new ArrayBlockingQueue<>(MAX_ENTRIES_IN_FLIGHT);
+        Semaphore bytesInFlight = new Semaphore(MAX_BYTES_IN_FLIGHT);
+        ExecutorService readers = Executors.newFixedThreadPool(READER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "fsmanagement-archive-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread walker = new Thread(() -> walk(root, archivePath, queue, bytesInFlight, readers), "fsmanagement-archive-walker");
+        walker.setDaemon(true);
+        Path parent = archivePath.getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Path temp = archivePath.resolveSibling(Directory.INTERNAL_PREFIX + "archive-" + UUID.randomUUID());
+        boolean replaced = false;
+        try {
+            try (ZipOutputStream output = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)))) {
+                output.setLevel(level);
+                walker.start();
+                while (true) {
+                    Entry entry = queue.take().get();
+                    if (entry == Entry.END) break;
+                    ZipEntry zipEntry = new ZipEntry(entry.name);
+                    zipEntry.setLastModifiedTime(entry.lastModifiedTime);
+                    output.putNextEntry(zipEntry);
+                    if (entry.content != null) {
+                        output.write(entry.content);
+                        bytesInFlight.release(entry.reservedBytes);
+                    } else if (entry.path != null) {
+                        Files.copy(entry.path, output);
+                    }
+                    output.closeEntry();
+                }
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new IOException(exception);
+            } catch (ExecutionException exception) {
+                Throwable cause = exception.getCause();
+                if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                throw new IOException(cause);
+            }
+            try {
+                Files.move(temp, archivePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException exception) {
+                Files.move(temp, archivePath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            replaced = true;
+        } finally {
+            walker.interrupt();
+            readers.shutdownNow();
+            if (!replaced) Files.deleteIfExists(temp);
+        }
+    }
+
+    static void walk(Path root, Path archivePath, BlockingQueue<CompletableFuture<Entry>> queue, Semaphore bytesInFlight, ExecutorService readers) {
+        try {
+            try (Stream<Path> paths = Files.walk(root)) {
+                for (Path path : (Iterable<Path>) paths::iterator) {
+                    if (path.equals(root) || path.equals(archivePath) || isInternal(root.relativize(path))) continue;
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attributes.isSymbolicLink()) continue;
+                    String name = root.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/");
+                    if (attributes.isDirectory()) {
+                        queue.put(CompletableFuture.completedFuture(new Entry(name + "/", null, attributes.lastModifiedTime(), null, 0)));
+                    } else if (attributes.isRegularFile() && attributes.size() <= SMALL_FILE_SIZE) {
+                        int size = (int) attributes.size();
+                        bytesInFlight.acquire(size);
+                        queue.put(CompletableFuture.supplyAsync(() -> {
+                            try {
+                                return new Entry(name, null, attributes.lastModifiedTime(), Files.readAllBytes(path), size);
+                            } catch (IOException exception) {
+                                bytesInFlight.release(size);
+                                throw new UncheckedIOException(exception);
+                            }
+                        }, readers));
+                    } else if (attributes.isRegularFile()) {
+                        queue.put(CompletableFuture.completedFuture(new Entry(name, path, attributes.lastModifiedTime(), null, 0)));
+                    }
+                }
+            }
+            queue.put(CompletableFuture.completedFuture(Entry.END));
+        } catch (InterruptedException ignored) {
+        } catch (IOException | RuntimeException exception) {
+            CompletableFuture<Entry> failed = new CompletableFuture<>();
+            failed.completeExceptionally(exception instanceof UncheckedIOException ? exception.getCause() : exception);
+            try {
+                queue.put(failed);
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Проверка, находится ли объект внутри служебного объекта библиотеки.
+     *
+     * @param relative Путь относительно корня архива
+     * @return Находится ли объект внутри служебного объекта.
+     */
+    static boolean isInternal(Path relative) {
+        for (Path name : relative) {
+            if (Directory.isInternal(name.toString())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Проверка, что путь от корня до объекта не проходит через символические ссылки.
+     * Проверенные директории запоминаются, так как распаковка сама ссылок не создаёт.
+     *
+     * @param root    Корень распаковки
+     * @param target  Объект внутри корня
+     * @param checked Уже проверенные директории
+     */
+    static void checkNoLinks(Path root, Path target, Set<Path> checked) throws IOException {
+        Path current = root;
+        for (Path name : root.relativize(target)) {
+            current = current.resolve(name);
+            if (checked.contains(current)) continue;
+            if (Files.isSymbolicLink(current)) throw new IOException("Archive entry passes through a symbolic link: " + current);
+            if (!current.equals(target)) checked.add(current);
+        }
+    }
+
+    static void unpack(Directory directory, BinaryFile archive) throws IOException {
+        Path root = directory.getLocation().toPath().toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        Set<Path> checked = new HashSet<>();
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(archive.getLocation().toPath()));
+             ZipInputStream zip = new ZipInputStream(input)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                Path target = root.resolve(entry.getName()).normalize();
+                if (!target.startsWith(root)) throw new IOException("Archive entry is outside of target directory: " + entry.getName());
+                checkNoLinks(root, target, checked);
+                if (entry.isDirectory()) {
+                    Files.createDirectories(target);
+                } else {
+                    Path parent = target.getParent();
+                    if (parent != null) Files.createDirectories(parent);
+                    Files.copy(zip, target, StandardCopyOption.REPLACE_EXISTING);
+                    if (entry.getLastModifiedTime() != null) Files.setLastModifiedTime(target, entry.getLastModifiedTime());
+                }
+                zip.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package ru.vladislav117.fsmanagement.directory;
+
+/**
+ * Позиция в отсортированном содержимом директории, после которой начинается следующая страница.
+ * Может быть сохранена в виде строки и восстановлена позже, например между запросами пользовательского интерфейса.
+ */
+public class DirectoryCursor implements Comparable<DirectoryCursor> {
+    protected final DirectorySortOrder order;
+    protected final long lastModified;
+    protected final String name;
+
+    /**
+     * Создание позиции.
+     *
+     * @param order        Порядок сортировки
+     * @param lastModified Время последнего изменения объекта в миллисекундах. Учитывается только при сортировке по
+     *                     времени изменения
+     * @param name         Имя объекта
+     */
+    public DirectoryCursor(DirectorySortOrder order, long lastModified, String name) {
+        this.order = order;
+        this.lastModified = order == DirectorySortOrder.LAST_MODIFIED ? lastModified : 0;
+        this.name = name;
+    }
+
+    /**
+     * Получение порядка сортировки.
+     *
+     * @return Порядок сортировки.
+     */
+    public DirectorySortOrder getOrder() {
+        return order;
+    }
+
+    /**
+     * Получение времени последнего изменения объекта.
+     *
+     * @return Время последнего изменения в миллисекундах.
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Получение имени объекта.
+     *
+     * @return Имя объекта.
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int compareTo(DirectoryCursor other) {
+        if (order == DirectorySortOrder.LAST_MODIFIED) {
+            int result = Long.compare(lastModified, other.lastModified);
+            if (result != 0) return result;
+        }
+        return name.compareTo(other.name);
+    }
+
+    /**
+     * Преобразование позиции в строку.
+     *
+     * @return Строка, из которой позицию можно восстановить методом {@link #parse(String)}.
+     */
+    @Override
+    public String toString() {
+        return order.name() + ":" + lastModified + ":" + name;
+    }
+
+    /**
+     * Восстановление позиции из строки.
+     *
+     * @param cursor Строка, полученная методом {@link #toString()}
+     * @return Позиция.
+     */
+    public static DirectoryCursor parse(String cursor) {
+        int first = cursor.indexOf(':');
+        int second = first == -1 ? -1 : cursor.indexOf(':', first + 1);
+        if (second == -1) throw new IllegalArgumentException("Invalid directory cursor: " + cursor);
+        try {
+            DirectorySortOrder order = DirectorySortOrder.valueOf(cursor.substring(0, first));
+            long lastModified = Long.parseLong(cursor.substring(first + 1, second));
+            return new DirectoryCursor(order, lastModified, cursor.substring(second + 1));
+        } catch (IllegalArgumentException exception) {
+            throw new IllegalArgumentException("Invalid directory cursor: " + cursor, exception);
+        }
+    }
+}
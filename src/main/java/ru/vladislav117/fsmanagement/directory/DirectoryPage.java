@@ -0,0 +1,123 @@
+package ru.vladislav117.fsmanagement.directory;
+
+import org.jetbrains.annotations.Nullable;
+import ru.vladislav117.fsmanagement.FSObject;
+import ru.vladislav117.fsmanagement.file.File;
+import ru.vladislav117.fsmanagement.metrics.FSListener;
+import ru.vladislav117.fsmanagement.metrics.FSMetrics;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Страница отсортированного содержимого директории.
+ */
+public class DirectoryPage {
+    protected final List<FSObject> entries;
+    protected final @Nullable DirectoryCursor nextCursor;
+
+    /**
+     * Создание страницы.
+     *
+     * @param entries    Объекты файловой системы страницы
+     * @param nextCursor Позиция следующей страницы или null, если страница последняя
+     */
+    public DirectoryPage(List<FSObject> entries, @Nullable DirectoryCursor nextCursor) {
+        this.entries = Collections.unmodifiableList(entries);
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Получение объектов файловой системы страницы.
+     *
+     * @return Объекты файловой системы в порядке сортировки.
+     */
+    public List<FSObject> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Получение позиции следующей страницы.
+     *
+     * @return Позиция следующей страницы или null, если страница последняя.
+     */
+    public @Nullable DirectoryCursor getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Проверка, есть ли следующая страница.
+     *
+     * @return Есть ли следующая страница.
+     */
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    /**
+     * Получение страницы содержимого директории.
+     * Содержимое директории читается потоково, а в памяти хранятся только pageSize + 1 наименьших элементов после
+     * позиции, поэтому память не зависит от размера директории.
+     *
+     * @param directory Директория
+     * @param order     Порядок сортировки
+     * @param pageSize  Размер страницы
+     * @param after     Позиция, после которой начинается страница, или null для первой страницы
+     * @return Страница.
+     */
+    static DirectoryPage load(Directory directory, DirectorySortOrder order, int pageSize, @Nullable DirectoryCursor after) {
+        if (pageSize <= 0) throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        if (after != null && after.getOrder() != order) throw new IllegalArgumentException("Cursor order " + after.getOrder() + " does not match " + order);
+        FSListener listener = FSMetrics.getListener();
+        long start = listener == null ? 0 : System.nanoTime();
+        Path root = directory.getLocation().toPath();
+        PriorityQueue<DirectoryCursor> largest = new PriorityQueue<>(pageSize + 1, Collections.reverseOrder());
+        long scanned = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root)) {
+            for (Path path : stream) {
+                scanned++;
+                if (Directory.isInternal(path.getFileName().toString())) continue;
+                long lastModified = 0;
+                if (order == DirectorySortOrder.LAST_MODIFIED) {
+                    try {
+                        lastModified = Files.readAttributes(path, BasicFileAttributes.class).lastModifiedTime().toMillis();
+                    } catch (IOException exception) {
+                        continue;
+                    }
+                }
+                DirectoryCursor key = new DirectoryCursor(order, lastModified, path.getFileName().toString());
+                if (after != null && key.compareTo(after) <= 0) continue;
+                if (largest.size() <= pageSize) {
+                    largest.add(key);
+                } else if (key.compareTo(largest.peek()) < 0) {
+                    largest.poll();
+                    largest.add(key);
+                }
+            }
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+        boolean hasNext = largest.size() > pageSize;
+        if (hasNext) largest.poll();
+        List<DirectoryCursor> keys = new ArrayList<>(largest);
+        Collections.sort(keys);
+        List<FSObject> entries = new ArrayList<>(keys.size());
+        for (DirectoryCursor key : keys) {
+            java.io.File file = new java.io.File(directory.getLocation(), key.getName());
+            if (file.isDirectory()) entries.add(new Directory(file));
+            else if (file.isFile()) entries.add(new File(file));
+        }
+        if (listener != null) {
+            listener.onList(directory, entries.size(), System.nanoTime() - start);
+            if (order == DirectorySortOrder.NAME) listener.onSyscallsAvoided(directory, scanned - keys.size());
+        }
+        return new DirectoryPage(entries, hasNext ? keys.get(keys.size() - 1) : null);
+    }
+}
@@ -0,0 +1,134 @@
+package ru.vladislav117.fsmanagement.directory;
+
+import ru.vladislav117.fsmanagement.FSObject;
+import ru.vladislav117.fsmanagement.file.ContentFile;
+import ru.vladislav117.fsmanagement.file.File;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Последовательное чтение всех файлов директории с упреждением.
+ * Пока вызывающий код обрабатывает очередной файл, следующие файлы читаются в фоновых потоках, поэтому ввод-вывод
+ * выполняется одновременно с обработкой. Упреждение ограничено количеством файлов и суммарным размером прочитанных,
+ * но ещё не выданных данных. Файлы выдаются в порядке обхода директории.
+ *
+ * @param <FileClass> Класс файла
+ * @param <Content>   Тип контента
+ */
+public class DirectoryPrefetcher<FileClass extends ContentFile<Content>, Content> implements Iterator<PrefetchedFile<FileClass, Content>>, AutoCloseable {
+    protected final Iterator<FSObject> source;
+    protected final Function<File, FileClass> factory;
+    protected final int readAhead;
+    protected final long maxBytesInFlight;
+    protected final ExecutorService executor;
+    protected final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    protected FileClass nextFile = null;
+    protected long nextSize = 0;
+    protected long bytesInFlight = 0;
+    protected boolean closed = false;
+
+    /**
+     * Создание чтения с упреждением.
+     *
+     * @param traversal        Обход директории
+     * @param factory          Преобразование найденного файла в файл нужного класса
+     * @param readAhead        Максимальное количество файлов, читаемых заранее
+     * @param maxBytesInFlight Максимальный суммарный размер файлов, читаемых заранее. Файл, превышающий ограничение,
+     *                         читается, только когда других заранее читаемых файлов нет
+     */
+    public DirectoryPrefetcher(DirectoryTraversal traversal, Function<File, FileClass> factory, int readAhead, long maxBytesInFlight) {
+        if (readAhead <= 0) throw new IllegalArgumentException("Read-ahead must be positive: " + readAhead);
+        source = traversal.iterator();
+        this.factory = factory;
+        this.readAhead = readAhead;
+        this.maxBytesInFlight = maxBytesInFlight;
+        int threads = Math.max(1, Math.min(readAhead, Runtime.getRuntime().availableProcessors()));
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "fsmanagement-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Файл, чтение которого запущено.
+     */
+    protected class Pending {
+        protected final long size;
+        protected final Future<PrefetchedFile<FileClass, Content>> future;
+
+        protected Pending(long size, Future<PrefetchedFile<FileClass, Content>> future) {
+            this.size = size;
+            this.future = future;
+        }
+    }
+
+    protected boolean loadNextFile() {
+        while (nextFile == null && source.hasNext()) {
+            FSObject fsObject = source.next();
+            if (!(fsObject instanceof File)) continue;
+            nextFile = factory.apply((File) fsObject);
+            nextSize = nextFile.getLocation().length();
+        }
+        return nextFile != null;
+    }
+
+    protected void fill() {
+        while (!closed && pending.size() < readAhead && loadNextFile()) {
+            if (!pending.isEmpty() && bytesInFlight + nextSize > maxBytesInFlight) return;
+            FileClass file = nextFile;
+            nextFile = null;
+            bytesInFlight += nextSize;
+            pending.add(new Pending(nextSize, executor.submit(() -> {
+                try {
+                    return new PrefetchedFile<>(file, file.read(), null);
+                } catch (RuntimeException exception) {
+                    return new PrefetchedFile<>(file, null, exception);
+                }
+            })));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        fill();
+        return !pending.isEmpty();
+    }
+
+    @Override
+    public PrefetchedFile<FileClass, Content> next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        Pending head = pending.poll();
+        PrefetchedFile<FileClass, Content> result;
+        try {
+            result = head.future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(exception);
+        } catch (ExecutionException exception) {
+            throw new RuntimeException(exception.getCause());
+        } finally {
+            bytesInFlight -= head.size;
+        }
+        fill();
+        return result;
+    }
+
+    /**
+     * Остановка чтения с упреждением. Уже запущенные чтения будут прерваны.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Pending item : pending) item.future.cancel(true);
+        pending.clear();
+        executor.shutdownNow();
+    }
+}
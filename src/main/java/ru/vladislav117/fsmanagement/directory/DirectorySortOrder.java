@@ -0,0 +1,15 @@
+package ru.vladislav117.fsmanagement.directory;
+
+/**
+ * Порядок сортировки содержимого директории.
+ */
+public enum DirectorySortOrder {
+    /**
+     * По имени.
+     */
+    NAME,
+    /**
+     * По времени последнего изменения, а при равном времени по имени.
+     */
+    LAST_MODIFIED
+}
@@ -0,0 +1,342 @@
+package ru.vladislav117.fsmanagement.directory;
+
+import org.apache.commons.io.FileUtils;
+import ru.vladislav117.fsmanagement.file.ContentFile;
+import ru.vladislav117.fsmanagement.file.WriteBehind;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Транзакция записи нескольких файлов директории.
+ * Контент записывается в теневую директорию, при фиксации все файлы синхронизируются с диском одним пакетом,
+ * после чего записывается журнал и файлы переносятся на свои места.
+ * Если процесс завершится или перенос не удастся после записи журнала, теневая директория сохраняется, и перенос
+ * будет завершён при следующем восстановлении.
+ * Согласованность гарантируется только для записи: транзакции и восстановление видят либо все файлы транзакции,
+ * либо ни одного. Файлы переносятся по одному, поэтому читатель, обращающийся к файлам напрямую, во время фиксации
+ * может увидеть часть файлов новыми, а часть старыми. После сбоя такое состояние сохраняется до восстановления,
+ * поэтому перед чтением директории, которая могла пострадать при сбое, следует вызвать
+ * {@link Directory#recoverTransactions()}.
+ * Теневые директории имеют служебный префикс {@link Directory#INTERNAL_PREFIX} и не видны при получении содержимого
+ * директории.
+ */
+public class DirectoryTransaction implements AutoCloseable {
+    protected static final String STAGING_PREFIX = Directory.INTERNAL_PREFIX + "transaction-";
+    protected static final String TEMP_PREFIX = Directory.INTERNAL_PREFIX + "staging-";
+    protected static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+    protected static final String LOCK_NAME = "lock";
+    protected static final String JOURNAL_NAME = "journal";
+    protected static final String JOURNAL_TEMP_NAME = "journal.tmp";
+
+    protected final Directory directory;
+    protected final Path root;
+    protected final Path staging;
+    protected final Map<Path, Path> stagedFiles = new LinkedHashMap<>();
+    protected int stagedCount = 0;
+    protected FileChannel lockChannel = null;
+    protected FileLock lock = null;
+    protected boolean finished = false;
+
+    /**
+     * Создание транзакции.
+     *
+     * @param directory Директория, в которой будут изменяться файлы
+     */
+    public DirectoryTransaction(Directory directory) {
+        this.directory = directory;
+        root = directory.getLocation().toPath().toAbsolutePath().normalize();
+        staging = root.resolve(STAGING_PREFIX + UUID.randomUUID());
+    }
+
+    /**
+     * Получение директории транзакции.
+     *
+     * @return Директория транзакции.
+     */
+    public Directory getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Добавление записи в транзакцию. Файл будет изменён только при фиксации транзакции.
+     *
+     * @param file      Файл внутри директории транзакции
+     * @param content   Контент, который будет записан
+     * @param <Content> Тип контента
+     * @return Эта же транзакция.
+     */
+    public <Content> DirectoryTransaction write(ContentFile<Content> file, Content content) {
+        checkNotFinished();
+        Path target = file.getLocation().toPath().toAbsolutePath().normalize();
+        if (!target.startsWith(root) || target.equals(root)) {
+            throw new IllegalArgumentException("File " + target + " is outside of transaction directory " + root);
+        }
+        try {
+            openStaging();
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+        Path stagedFile = staging.resolve(Integer.toString(stagedCount++));
+        file.relocated(stagedFile.toFile()).writeOrThrow(content);
+        stagedFiles.remove(target);
+        stagedFiles.put(target, stagedFile);
+        return this;
+    }
+
+    /**
+     * Фиксация транзакции.
+     */
+    public void commit() {
+        checkNotFinished();
+        finished = true;
+        boolean journaled = false;
+        boolean applied = false;
+        try {
+            if (stagedFiles.isEmpty()) return;
+            for (Path stagedFile : stagedFiles.values()) force(stagedFile);
+            Path journalTemp = staging.resolve(JOURNAL_TEMP_NAME);
+            StringBuilder journal = new StringBuilder();
+            for (Map.Entry<Path, Path> entry : stagedFiles.entrySet()) {
+                journal.append(escape(entry.getValue().getFileName().toString())).append('\t')
+                        .append(escape(root.relativize(entry.getKey()).toString())).append('\n');
+            }
+            Files.write(journalTemp, journal.toString().getBytes(StandardCharsets.UTF_8));
+            force(journalTemp);
+            move(journalTemp, staging.resolve(JOURNAL_NAME));
+            journaled = true;
+            forceDirectory(staging);
+            apply(root, staging);
+            applied = true;
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        } finally {
+            if (applied || !journaled) cleanup();
+            else releaseLock();
+        }
+    }
+
+    /**
+     * Отмена транзакции. Файлы директории не изменяются.
+     */
+    public void rollback() {
+        if (finished) return;
+        finished = true;
+        cleanup();
+    }
+
+    /**
+     * Отмена транзакции, если она не была зафиксирована.
+     */
+    @Override
+    public void close() {
+        rollback();
+    }
+
+    protected void checkNotFinished() {
+        if (finished) throw new IllegalStateException("Transaction is already finished");
+    }
+
+    /**
+     * Создание теневой директории.
+     * Директория создаётся под временным именем и получает имя транзакции только после блокировки, поэтому
+     * восстановление никогда не видит теневую директорию без блокировки.
+     */
+    protected void openStaging() throws IOException {
+        if (lock != null) return;
+        Files.createDirectories(root);
+        Path temp = root.resolve(TEMP_PREFIX + staging.getFileName().toString().substring(STAGING_PREFIX.length()));
+        Files.createDirectory(temp);
+        try {
+            lockChannel = FileChannel.open(temp.resolve(LOCK_NAME), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            lock = lockChannel.lock();
+            Files.move(temp, staging, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exception) {
+            releaseLock();
+            FileUtils.deleteQuietly(temp.toFile());
+            throw exception;
+        }
+    }
+
+    protected void releaseLock() {
+        try {
+            if (lock != null) lock.release();
+            if (lockChannel != null) lockChannel.close();
+        } catch (IOException ignored) {
+        }
+        lock = null;
+        lockChannel = null;
+    }
+
+    /**
+     * Удаление теневой директории. Содержимое удаляется до снятия блокировки, чтобы восстановление не приняло
+     * удаляемую директорию за брошенную.
+     */
+    protected void cleanup() {
+        FileUtils.deleteQuietly(staging.toFile());
+        releaseLock();
+        FileUtils.deleteQuietly(staging.toFile());
+    }
+
+    /**
+     * Восстановление незавершённых транзакций директории.
+     * Транзакции с записанным журналом завершаются, остальные отменяются.
+     * Транзакции, выполняющиеся в данный момент, не затрагиваются. Теневые директории, удалённые во время
+     * восстановления, пропускаются.
+     *
+     * @param directory Директория
+     */
+    static void recover(Directory directory) {
+        Path root = directory.getLocation().toPath().toAbsolutePath().normalize();
+        if (!Files.isDirectory(root)) return;
+        List<Path> stagings = new ArrayList<>();
+        List<Path> temps = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root, ".fsm-*")) {
+            for (Path entry : stream) {
+                String name = entry.getFileName().toString();
+                if (name.startsWith(STAGING_PREFIX)) stagings.add(entry);
+                else if (name.startsWith(TEMP_PREFIX)) temps.add(entry);
+            }
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+        for (Path staging : stagings) {
+            try (FileChannel channel = FileChannel.open(staging.resolve(LOCK_NAME), StandardOpenOption.WRITE)) {
+                FileLock lock = tryLock(channel);
+                if (lock == null) continue;
+                try {
+                    if (Files.exists(staging.resolve(JOURNAL_NAME))) apply(root, staging);
+                    FileUtils.deleteQuietly(staging.toFile());
+                } finally {
+                    lock.release();
+                }
+            } catch (NoSuchFileException ignored) {
+            } catch (IOException exception) {
+                throw new RuntimeException(exception);
+            }
+            FileUtils.deleteQuietly(staging.toFile());
+        }
+        for (Path temp : temps) {
+            try {
+                if (System.currentTimeMillis() - Files.getLastModifiedTime(temp).toMillis() < STALE_TEMP_MILLIS) continue;
+                try (FileChannel channel = FileChannel.open(temp.resolve(LOCK_NAME), StandardOpenOption.WRITE)) {
+                    FileLock lock = tryLock(channel);
+                    if (lock == null) continue;
+                    lock.release();
+                }
+            } catch (NoSuchFileException ignored) {
+            } catch (IOException exception) {
+                throw new RuntimeException(exception);
+            }
+            FileUtils.deleteQuietly(temp.toFile());
+        }
+    }
+
+    protected static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException exception) {
+            return null;
+        }
+    }
+
+    /**
+     * Перенос файлов по журналу. Директории, в которые перенесены файлы, синхронизируются с диском до возврата,
+     * поэтому журнал можно удалять.
+     */
+    protected static void apply(Path root, Path staging) throws IOException {
+        List<String> lines = Files.readAllLines(staging.resolve(JOURNAL_NAME), StandardCharsets.UTF_8);
+        Set<Path> parents = new LinkedHashSet<>();
+        for (String line : lines) {
+            int separator = line.indexOf('\t');
+            if (separator == -1) continue;
+            Path stagedFile = staging.resolve(unescape(line.substring(0, separator)));
+            Path target = root.resolve(unescape(line.substring(separator + 1))).normalize();
+            if (!target.startsWith(root) || target.equals(root)) throw new IOException("Journal target is outside of transaction directory: " + target);
+            Path parent = target.getParent();
+            parents.add(parent);
+            if (!Files.exists(stagedFile)) continue;
+            Files.createDirectories(parent);
+            WriteBehind.discardPending(target.toFile());
+            move(stagedFile, target);
+        }
+        for (Path parent : parents) forceDirectory(parent);
+    }
+
+    /**
+     * Экранирование поля журнала. Поля разделяются табуляцией, а записи переводом строки, поэтому эти символы
+     * внутри путей экранируются.
+     */
+    protected static String escape(String field) {
+        StringBuilder escaped = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            switch (c) {
+                case '\\' -> escaped.append("\\\\");
+                case '\t' -> escaped.append("\\t");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    protected static String unescape(String field) {
+        StringBuilder unescaped = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c != '\\' || i + 1 == field.length()) {
+                unescaped.append(c);
+                continue;
+            }
+            char next = field.charAt(++i);
+            switch (next) {
+                case '\\' -> unescaped.append('\\');
+                case 't' -> unescaped.append('\t');
+                case 'n' -> unescaped.append('\n');
+                case 'r' -> unescaped.append('\r');
+                default -> unescaped.append(c).append(next);
+            }
+        }
+        return unescaped.toString();
+    }
+
+    protected static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException exception) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    protected static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    protected static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+}
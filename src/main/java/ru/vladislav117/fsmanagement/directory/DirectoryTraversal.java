@@ -0,0 +1,217 @@
+package ru.vladislav117.fsmanagement.directory;
+
+import ru.vladislav117.fsmanagement.FSObject;
+import ru.vladislav117.fsmanagement.file.File;
+import ru.vladislav117.fsmanagement.metrics.FSListener;
+import ru.vladislav117.fsmanagement.metrics.FSMetrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Обход директории, включая все поддиректории.
+ * Обход выполняется без рекурсии, поэтому глубина дерева не ограничена размером стека. Каждая директория посещается
+ * не более одного раза, что защищает от циклов символических ссылок. Объекты возвращаются в том же порядке, что и при
+ * рекурсивном обходе: директория, затем её содержимое, затем следующие объекты.
+ */
+public class DirectoryTraversal implements Iterable<FSObject> {
+    protected static final LinkOption[] FOLLOW_LINKS = new LinkOption[0];
+    protected static final LinkOption[] NO_FOLLOW_LINKS = new LinkOption[]{LinkOption.NOFOLLOW_LINKS};
+
+    protected final Directory root;
+    protected boolean followLinks = true;
+    protected boolean deduplicateHardLinks = false;
+    protected int maxDepth = Integer.MAX_VALUE;
+
+    /**
+     * Создание обхода.
+     *
+     * @param root Корневая директория
+     */
+    public DirectoryTraversal(Directory root) {
+        this.root = root;
+    }
+
+    /**
+     * Проверка, разыменовываются ли символические ссылки.
+     *
+     * @return Разыменовываются ли символические ссылки.
+     */
+    public boolean isFollowLinks() {
+        return followLinks;
+    }
+
+    /**
+     * Установка разыменования символических ссылок. По умолчанию ссылки разыменовываются.
+     * Если ссылки не разыменовываются, они пропускаются.
+     *
+     * @param followLinks Разыменовывать ли символические ссылки
+     * @return Этот же обход.
+     */
+    public DirectoryTraversal setFollowLinks(boolean followLinks) {
+        this.followLinks = followLinks;
+        return this;
+    }
+
+    /**
+     * Проверка, пропускаются ли повторные жёсткие ссылки на один и тот же файл.
+     *
+     * @return Пропускаются ли повторные жёсткие ссылки.
+     */
+    public boolean isDeduplicateHardLinks() {
+        return deduplicateHardLinks;
+    }
+
+    /**
+     * Установка пропуска повторных жёстких ссылок на один и тот же файл. По умолчанию выключено.
+     * Требует памяти, пропорциональной количеству файлов.
+     *
+     * @param deduplicateHardLinks Пропускать ли повторные жёсткие ссылки
+     * @return Этот же обход.
+     */
+    public DirectoryTraversal setDeduplicateHardLinks(boolean deduplicateHardLinks) {
+        this.deduplicateHardLinks = deduplicateHardLinks;
+        return this;
+    }
+
+    /**
+     * Получение максимальной глубины обхода.
+     *
+     * @return Максимальная глубина обхода.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Установка максимальной глубины обхода. Объекты корневой директории находятся на глубине 1.
+     *
+     * @param maxDepth Максимальная глубина обхода
+     * @return Этот же обход.
+     */
+    public DirectoryTraversal setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * Получение всех найденных объектов файловой системы.
+     *
+     * @return Найденные объекты файловой системы.
+     */
+    public ArrayList<FSObject> collect() {
+        return collect(fsObject -> true);
+    }
+
+    /**
+     * Получение найденных объектов файловой системы, удовлетворяющих фильтру.
+     *
+     * @param filter Фильтр объектов файловой системы
+     * @return Найденные объекты файловой системы.
+     */
+    public ArrayList<FSObject> collect(Predicate<FSObject> filter) {
+        FSListener listener = FSMetrics.getListener();
+        long start = listener == null ? 0 : System.nanoTime();
+        ArrayList<FSObject> fsObjects = new ArrayList<>();
+        for (FSObject fsObject : this) {
+            if (filter.test(fsObject)) fsObjects.add(fsObject);
+        }
+        if (listener != null) listener.onList(root, fsObjects.size(), System.nanoTime() - start);
+        return fsObjects;
+    }
+
+    @Override
+    public Iterator<FSObject> iterator() {
+        return new TraversalIterator();
+    }
+
+    /**
+     * Итератор обхода. Хранит стек итераторов содержимого директорий на текущем пути.
+     */
+    protected class TraversalIterator implements Iterator<FSObject> {
+        protected final LinkOption[] linkOptions = followLinks ? FOLLOW_LINKS : NO_FOLLOW_LINKS;
+        protected final ArrayDeque<Iterator<java.io.File>> stack = new ArrayDeque<>();
+        protected final Set<Object> visitedDirectories = new HashSet<>();
+        protected final Set<Object> visitedFiles = new HashSet<>();
+        protected FSObject next = null;
+
+        protected TraversalIterator() {
+            BasicFileAttributes attributes = readAttributes(root.getLocation());
+            if (attributes == null || !attributes.isDirectory()) return;
+            visitedDirectories.add(key(root.getLocation(), attributes));
+            push(root.getLocation());
+        }
+
+        protected BasicFileAttributes readAttributes(java.io.File file) {
+            try {
+                return Files.readAttributes(file.toPath(), BasicFileAttributes.class, linkOptions);
+            } catch (IOException | RuntimeException exception) {
+                return null;
+            }
+        }
+
+        protected Object key(java.io.File file, BasicFileAttributes attributes) {
+            Object fileKey = attributes.fileKey();
+            if (fileKey != null) return fileKey;
+            try {
+                return file.getCanonicalPath();
+            } catch (IOException exception) {
+                return file.getAbsolutePath();
+            }
+        }
+
+        protected void push(java.io.File directory) {
+            java.io.File[] files = directory.listFiles();
+            if (files != null) stack.push(Arrays.asList(files).iterator());
+        }
+
+        protected FSObject advance() {
+            while (!stack.isEmpty()) {
+                Iterator<java.io.File> current = stack.peek();
+                if (!current.hasNext()) {
+                    stack.pop();
+                    continue;
+                }
+                java.io.File file = current.next();
+                if (Directory.isInternal(file.getName())) continue;
+                BasicFileAttributes attributes = readAttributes(file);
+                if (attributes == null) continue;
+                if (attributes.isDirectory()) {
+                    if (!visitedDirectories.add(key(file, attributes))) continue;
+                    if (stack.size() < maxDepth) push(file);
+                    return new Directory(file);
+                }
+                if (attributes.isRegularFile()) {
+                    if (deduplicateHardLinks && !visitedFiles.add(key(file, attributes))) continue;
+                    return new File(file);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) next = advance();
+            return next != null;
+        }
+
+        @Override
+        public FSObject next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            FSObject result = next;
+            next = null;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package ru.vladislav117.fsmanagement.directory;
+
+import ru.vladislav117.fsmanagement.metrics.FSListener;
+import ru.vladislav117.fsmanagement.metrics.FSMetrics;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Collectors;
+
+/**
+ * Занимаемое директорией место.
+ * Вычисляется за один проход по дереву с использованием атрибутов, полученных во время обхода.
+ * Память при вычислении пропорциональна глубине дерева и количеству запрошенных поддиректорий, а не размеру дерева.
+ */
+public class DirectoryUsage {
+    protected final Directory directory;
+    protected final long totalSize;
+    protected final long fileCount;
+    protected final long directoryCount;
+    protected final List<Entry> largestDirectories;
+
+    /**
+     * Создание сведений о занимаемом месте.
+     *
+     * @param directory          Директория
+     * @param totalSize          Суммарный размер файлов в байтах
+     * @param fileCount          Количество файлов
+     * @param directoryCount     Количество поддиректорий
+     * @param largestDirectories Крупнейшие поддиректории
+     */
+    public DirectoryUsage(Directory directory, long totalSize, long fileCount, long directoryCount, List<Entry> largestDirectories) {
+        this.directory = directory;
+        this.totalSize = totalSize;
+        this.fileCount = fileCount;
+        this.directoryCount = directoryCount;
+        this.largestDirectories = Collections.unmodifiableList(largestDirectories);
+    }
+
+    /**
+     * Получение директории.
+     *
+     * @return Директория.
+     */
+    public Directory getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Получение суммарного размера файлов.
+     *
+     * @return Суммарный размер файлов в байтах.
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Получение количества файлов, включая файлы в поддиректориях.
+     *
+     * @return Количество файлов.
+     */
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * Получение количества поддиректорий, включая вложенные.
+     *
+     * @return Количество поддиректорий.
+     */
+    public long getDirectoryCount() {
+        return directoryCount;
+    }
+
+    /**
+     * Получение крупнейших поддиректорий в порядке убывания размера.
+     *
+     * @return Крупнейшие поддиректории.
+     */
+    public List<Entry> getLargestDirectories() {
+        return largestDirectories;
+    }
+
+    /**
+     * Сведения о занимаемом месте одной поддиректорией.
+     */
+    public static class Entry {
+        protected final Directory directory;
+        protected final int depth;
+        protected final long size;
+        protected final long fileCount;
+
+        /**
+         * Создание сведений о поддиректории.
+         *
+         * @param directory Поддиректория
+         * @param depth     Глубина относительно корня обхода, начиная с 1
+         * @param size      Суммарный размер файлов в байтах
+         * @param fileCount Количество файлов
+         */
+        public Entry(Directory directory, int depth, long size, long fileCount) {
+            this.directory = directory;
+            this.depth = depth;
+            this.size = size;
+            this.fileCount = fileCount;
+        }
+
+        /**
+         * Получение поддиректории.
+         *
+         * @return Поддиректория.
+         */
+        public Directory getDirectory() {
+            return directory;
+        }
+
+        /**
+         * Получение глубины относительно корня обхода.
+         *
+         * @return Глубина, начиная с 1.
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * Получение суммарного размера файлов.
+         *
+         * @return Суммарный размер файлов в байтах.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Получение количества файлов.
+         *
+         * @return Количество файлов.
+         */
+        public long getFileCount() {
+            return fileCount;
+        }
+    }
+
+    /**
+     * Вычисление занимаемого директорией места.
+     *
+     * @param directory Директория
+     * @param maxDepth  Максимальная глубина поддиректорий, попадающих в отчёт
+     * @param top       Количество крупнейших поддиректорий в отчёте
+     * @param parallel  Обходить ли поддиректории верхнего уровня параллельно
+     * @return Сведения о занимаемом месте.
+     */
+    static DirectoryUsage compute(Directory directory, int maxDepth, int top, boolean parallel) {
+        FSListener listener = FSMetrics.getListener();
+        long start = listener == null ? 0 : System.nanoTime();
+        Path root = directory.getLocation().toPath();
+        Walker result;
+        if (parallel) {
+            Walker rootWalker = new Walker(root, 0, maxDepth, top);
+            List<Path> children = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(root)) {
+                for (Path child : stream) {
+                    if (Directory.isInternal(child.getFileName().toString())) continue;
+                    BasicFileAttributes attributes = readAttributes(child);
+                    if (attributes == null) continue;
+                    if (attributes.isDirectory()) children.add(child);
+                    else rootWalker.addFile(attributes);
+                }
+            } catch (IOException exception) {
+                if (listener != null) listener.onSuppressedError(directory, exception);
+            }
+            List<Walker> childWalkers = children.parallelStream()
+                    .map(child -> new Walker(child, 1, maxDepth, top).walk())
+                    .collect(Collectors.toList());
+            for (Walker childWalker : childWalkers) rootWalker.merge(childWalker);
+            result = rootWalker;
+        } else {
+            result = new Walker(root, 0, maxDepth, top).walk();
+        }
+        if (listener != null) {
+            listener.onList(directory, result.fileCount + result.directoryCount, System.nanoTime() - start);
+            listener.onSyscallsAvoided(directory, result.fileCount);
+        }
+        return result.toUsage(directory);
+    }
+
+    protected static BasicFileAttributes readAttributes(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException exception) {
+            return null;
+        }
+    }
+
+    /**
+     * Обход одного поддерева. Хранит только стек счётчиков по текущему пути и ограниченную кучу крупнейших директорий.
+     */
+    protected static class Walker extends SimpleFileVisitor<Path> {
+        protected static final Comparator<Entry> BY_SIZE = Comparator.comparingLong(Entry::getSize);
+
+        protected final Path root;
+        protected final int rootDepth;
+        protected final int maxDepth;
+        protected final int top;
+        protected final ArrayDeque<long[]> stack = new ArrayDeque<>();
+        protected final PriorityQueue<Entry> largest = new PriorityQueue<>(BY_SIZE);
+        protected long totalSize = 0;
+        protected long fileCount = 0;
+        protected long directoryCount = 0;
+
+        protected Walker(Path root, int rootDepth, int maxDepth, int top) {
+            this.root = root;
+            this.rootDepth = rootDepth;
+            this.maxDepth = maxDepth;
+            this.top = top;
+        }
+
+        protected Walker walk() {
+            try {
+                Files.walkFileTree(root, this);
+            } catch (IOException exception) {
+                FSListener listener = FSMetrics.getListener();
+                if (listener != null) listener.onSuppressedError(new Directory(root.toFile()), exception);
+            }
+            return this;
+        }
+
+        protected void addFile(BasicFileAttributes attributes) {
+            totalSize += attributes.size();
+            fileCount++;
+            long[] current = stack.peek();
+            if (current != null) {
+                current[0] += attributes.size();
+                current[1]++;
+            }
+        }
+
+        protected void offer(Entry entry) {
+            if (top <= 0) return;
+            if (largest.size() < top) {
+                largest.add(entry);
+            } else if (BY_SIZE.compare(entry, largest.peek()) > 0) {
+                largest.poll();
+                largest.add(entry);
+            }
+        }
+
+        protected void merge(Walker other) {
+            totalSize += other.totalSize;
+            fileCount += other.fileCount;
+            directoryCount += other.directoryCount;
+            for (Entry entry : other.largest) offer(entry);
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+            if (!dir.equals(root) && Directory.isInternal(dir.getFileName().toString())) return FileVisitResult.SKIP_SUBTREE;
+            stack.push(new long[]{0, 0});
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+            if (!attributes.isDirectory() && !Directory.isInternal(file.getFileName().toString())) addFile(attributes);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exception) {
+            FSListener listener = FSMetrics.getListener();
+            if (listener != null) listener.onSuppressedError(new Directory(file.toFile()), exception);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException exception) {
+            long[] current = stack.pop();
+            int depth = rootDepth + stack.size();
+            if (depth > 0) {
+                directoryCount++;
+                if (depth <= maxDepth) offer(new Entry(new Directory(dir.toFile()), depth, current[0], current[1]));
+            }
+            long[] parent = stack.peek();
+            if (parent != null) {
+                parent[0] += current[0];
+                parent[1] += current[1];
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        protected DirectoryUsage toUsage(Directory directory) {
+            List<Entry> entries = new ArrayList<>(largest);
+            entries.sort(BY_SIZE.reversed());
+            return new DirectoryUsage(directory, totalSize, fileCount, directoryCount, entries);
+        }
+    }
+}
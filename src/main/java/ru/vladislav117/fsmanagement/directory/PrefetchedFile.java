@@ -0,0 +1,57 @@
+package ru.vladislav117.fsmanagement.directory;
+
+import org.jetbrains.annotations.Nullable;
+import ru.vladislav117.fsmanagement.file.ContentFile;
+
+/**
+ * Файл, содержимое которого было прочитано заранее.
+ *
+ * @param <FileClass> Класс файла
+ * @param <Content>   Тип контента
+ */
+public class PrefetchedFile<FileClass extends ContentFile<Content>, Content> {
+    protected final FileClass file;
+    protected final @Nullable Content content;
+    protected final @Nullable RuntimeException exception;
+
+    /**
+     * Создание заранее прочитанного файла.
+     *
+     * @param file      Файл
+     * @param content   Прочитанный контент
+     * @param exception Ошибка чтения или null
+     */
+    public PrefetchedFile(FileClass file, @Nullable Content content, @Nullable RuntimeException exception) {
+        this.file = file;
+        this.content = content;
+        this.exception = exception;
+    }
+
+    /**
+     * Получение файла.
+     *
+     * @return Файл.
+     */
+    public FileClass getFile() {
+        return file;
+    }
+
+    /**
+     * Получение прочитанного контента. Если при чтении произошла ошибка, она будет выброшена.
+     *
+     * @return Прочитанный контент.
+     */
+    public Content getContent() {
+        if (exception != null) throw exception;
+        return content;
+    }
+
+    /**
+     * Проверка, произошла ли ошибка при чтении.
+     *
+     * @return Произошла ли ошибка при чтении.
+     */
+    public boolean isFailed() {
+        return exception != null;
+    }
+}
@@ -2,9 +2,18 @@ package ru.vladislav117.fsmanagement.file;
 
 import org.apache.commons.io.FileUtils;
 import ru.vladislav117.fsmanagement.FSObject;
+import ru.vladislav117.fsmanagement.buffer.ByteBufferPool;
+import ru.vladislav117.fsmanagement.metrics.FSListener;
+import ru.vladislav117.fsmanagement.metrics.FSMetrics;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Бинарный файл.
@@ -72,8 +81,187 @@ public class BinaryFile extends ContentFile<byte[]> {
         return FileUtils.readFileToByteArray(location);
     }
 
+    @Override
+    protected byte[] copyOf(byte[] content) {
+        return content.clone();
+    }
+
+    @Override
+    protected long sizeOf(byte[] content) {
+        return content.length;
+    }
+
     @Override
     protected void writeUnsafe(byte[] content) throws IOException {
         FileUtils.writeByteArrayToFile(location, content);
     }
+
+    /**
+     * Открытие файла для позиционного чтения и записи с прямым буфером из пула по умолчанию.
+     * Если файла не существует, он будет создан. Ожидающий отложенной записи контент сначала записывается на диск.
+     *
+     * @return Открытый файл, который необходимо закрыть после использования.
+     */
+    public BinaryFileChannel open() {
+        return open(ByteBufferPool.getDefault());
+    }
+
+    /**
+     * Открытие файла для позиционного чтения и записи.
+     * Если файла не существует, он будет создан. Ожидающий отложенной записи контент сначала записывается на диск.
+     * Запись через {@link #write(Object)} при отложенной записи, сделанная после открытия, заменит изменения,
+     * внесённые через открытый файл.
+     *
+     * @param pool Пул, из которого берётся прямой буфер
+     * @return Открытый файл, который необходимо закрыть после использования.
+     */
+    public BinaryFileChannel open(ByteBufferPool pool) {
+        flush();
+        try {
+            FileUtils.createParentDirectories(location);
+            return new BinaryFileChannel(this, pool);
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    /**
+     * Получение размера файла.
+     * Ожидающий отложенной записи контент сначала записывается на диск.
+     *
+     * @return Размер файла в байтах.
+     */
+    public long size() {
+        flush();
+        try (FileChannel channel = FileChannel.open(location.toPath(), StandardOpenOption.READ)) {
+            return channel.size();
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    /**
+     * Чтение из файла, начиная с указанной позиции.
+     * Читается столько байт, сколько помещается в буфер, или до конца файла.
+     * Каждый вызов открывает файл заново, поэтому для многих обращений следует использовать {@link #open()}.
+     * Ожидающий отложенной записи контент сначала записывается на диск.
+     *
+     * @param position    Позиция в файле
+     * @param destination Буфер, в который будут прочитаны байты
+     * @return Количество прочитанных байт или -1, если позиция находится за концом файла.
+     */
+    public int readAt(long position, ByteBuffer destination) {
+        flush();
+        FSListener listener = FSMetrics.getListener();
+        long start = listener == null ? 0 : System.nanoTime();
+        try (FileChannel channel = FileChannel.open(location.toPath(), StandardOpenOption.READ)) {
+            int read = BinaryFileChannel.readFully(channel, position, destination);
+            if (listener != null) listener.onRead(this, Math.max(read, 0), System.nanoTime() - start);
+            return read;
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    /**
+     * Чтение из файла, начиная с указанной позиции.
+     *
+     * @param position Позиция в файле
+     * @param length   Максимальное количество байт
+     * @return Прочитанные байты. Массив может быть короче запрошенного, если достигнут конец файла.
+     */
+    public byte[] readAt(long position, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        int read = Math.max(readAt(position, buffer), 0);
+        if (read == length) return buffer.array();
+        byte[] bytes = new byte[read];
+        System.arraycopy(buffer.array(), 0, bytes, 0, read);
+        return bytes;
+    }
+
+    /**
+     * Запись в файл, начиная с указанной позиции. Остальное содержимое файла не изменяется.
+     * Если файла не существует, он будет создан.
+     * Каждый вызов открывает файл заново, поэтому для многих обращений следует использовать {@link #open()}.
+     * Ожидающий отложенной записи контент сначала записывается на диск, чтобы он не заменил изменение.
+     *
+     * @param position Позиция в файле
+     * @param source   Буфер, все оставшиеся байты которого будут записаны
+     * @return Количество записанных байт.
+     */
+    public int writeAt(long position, ByteBuffer source) {
+        flush();
+        FSListener listener = FSMetrics.getListener();
+        long start = listener == null ? 0 : System.nanoTime();
+        try (FileChannel channel = FileChannel.open(location.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            int total = BinaryFileChannel.writeFully(channel, position, source);
+            if (listener != null) listener.onWrite(this, total, System.nanoTime() - start);
+            return total;
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    /**
+     * Запись в файл, начиная с указанной позиции. Остальное содержимое файла не изменяется.
+     * Если файла не существует, он будет создан.
+     *
+     * @param position Позиция в файле
+     * @param bytes    Байты, которые будут записаны
+     * @return Этот же файл.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public BinaryFile writeAt(long position, byte[] bytes) {
+        writeAt(position, ByteBuffer.wrap(bytes));
+        return this;
+    }
+
+    /**
+     * Обрезка файла до указанного размера. Если файл меньше, он не изменяется.
+     * Ожидающий отложенной записи контент сначала записывается на диск, чтобы он не заменил изменение.
+     *
+     * @param size Новый размер файла в байтах
+     * @return Этот же файл.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public BinaryFile truncate(long size) {
+        flush();
+        try (FileChannel channel = FileChannel.open(location.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+        return this;
+    }
+
+    /**
+     * Разделение файла на фрагменты для параллельной обработки.
+     *
+     * @param chunkSize Размер фрагмента в байтах
+     * @return Разделитель, возвращающий фрагменты по порядку.
+     */
+    public Spliterator<FileChunk> chunkSpliterator(int chunkSize) {
+        return new FileChunkSpliterator<>(location.toPath(), chunkSize, null, (position, length) -> new FileChunk(this, position, length));
+    }
+
+    /**
+     * Получение параллельного потока фрагментов файла.
+     * Все фрагменты, кроме последнего, имеют указанный размер.
+     *
+     * @param chunkSize Размер фрагмента в байтах
+     * @return Параллельный поток фрагментов.
+     */
+    public Stream<FileChunk> chunks(int chunkSize) {
+        return StreamSupport.stream(chunkSpliterator(chunkSize), true);
+    }
+
+    /**
+     * Получение параллельного потока фрагментов файла размера по умолчанию.
+     *
+     * @return Параллельный поток фрагментов.
+     * @see FileChunk#DEFAULT_SIZE
+     */
+    public Stream<FileChunk> chunks() {
+        return chunks(FileChunk.DEFAULT_SIZE);
+    }
 }
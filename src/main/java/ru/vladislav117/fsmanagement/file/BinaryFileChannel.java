@@ -0,0 +1,234 @@
+package ru.vladislav117.fsmanagement.file;
+
+import org.jetbrains.annotations.Nullable;
+import ru.vladislav117.fsmanagement.buffer.ByteBufferPool;
+import ru.vladislav117.fsmanagement.metrics.FSListener;
+import ru.vladislav117.fsmanagement.metrics.FSMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Открытый бинарный файл для позиционного чтения и записи.
+ * Файл открывается один раз, поэтому изменение многих записей не требует открытия и закрытия файла для каждой из
+ * них. Чтение и запись массивов байтов выполняются через один прямой буфер из пула, который берётся при первом
+ * использовании и возвращается при закрытии.
+ * Не предназначен для одновременного использования несколькими потоками.
+ */
+public class BinaryFileChannel implements AutoCloseable {
+    /**
+     * Размер прямого буфера для чтения и записи массивов байтов.
+     */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    protected final BinaryFile file;
+    protected final FileChannel channel;
+    protected final ByteBufferPool pool;
+    protected @Nullable ByteBuffer buffer = null;
+
+    /**
+     * Открытие файла. Если файла не существует, он будет создан.
+     *
+     * @param file Файл
+     * @param pool Пул, из которого берётся прямой буфер
+     */
+    protected BinaryFileChannel(BinaryFile file, ByteBufferPool pool) throws IOException {
+        this.file = file;
+        this.pool = pool;
+        channel = FileChannel.open(file.getLocation().toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    }
+
+    /**
+     * Получение файла.
+     *
+     * @return Файл.
+     */
+    public BinaryFile getFile() {
+        return file;
+    }
+
+    /**
+     * Получение размера файла.
+     *
+     * @return Размер файла в байтах.
+     */
+    public long size() {
+        try {
+            return channel.size();
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    /**
+     * Чтение из файла, начиная с указанной позиции.
+     * Читается столько байт, сколько помещается в буфер, или до конца файла.
+     *
+     * @param position    Позиция в файле
+     * @param destination Буфер, в который будут прочитаны байты
+     * @return Количество прочитанных байт или -1, если позиция находится за концом файла.
+     */
+    public int readAt(long position, ByteBuffer destination) {
+        FSListener listener = FSMetrics.getListener();
+        long start = listener == null ? 0 : System.nanoTime();
+        try {
+            int read = readFully(channel, position, destination);
+            if (listener != null) listener.onRead(file, Math.max(read, 0), System.nanoTime() - start);
+            return read;
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    /**
+     * Чтение из файла в массив, начиная с указанной позиции. Байты читаются через прямой буфер из пула.
+     *
+     * @param position Позиция в файле
+     * @param bytes    Массив, в который будут прочитаны байты
+     * @param offset   Позиция в массиве
+     * @param length   Максимальное количество байт
+     * @return Количество прочитанных байт или -1, если позиция находится за концом файла.
+     */
+    public int readAt(long position, byte[] bytes, int offset, int length) {
+        ByteBuffer buffer = buffer();
+        int total = 0;
+        while (total < length) {
+            int part = Math.min(buffer.capacity(), length - total);
+            buffer.clear().limit(part);
+            int read = readAt(position + total, buffer);
+            if (read == -1) return total == 0 ? -1 : total;
+            buffer.flip().get(bytes, offset + total, read);
+            total += read;
+            if (read < part) break;
+        }
+        return total;
+    }
+
+    /**
+     * Запись в файл, начиная с указанной позиции. Остальное содержимое файла не изменяется.
+     *
+     * @param position Позиция в файле
+     * @param source   Буфер, все оставшиеся байты которого будут записаны
+     * @return Количество записанных байт.
+     */
+    public int writeAt(long position, ByteBuffer source) {
+        FSListener listener = FSMetrics.getListener();
+        long start = listener == null ? 0 : System.nanoTime();
+        try {
+            int written = writeFully(channel, position, source);
+            if (listener != null) listener.onWrite(file, written, System.nanoTime() - start);
+            return written;
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    /**
+     * Запись массива в файл, начиная с указанной позиции. Байты записываются через прямой буфер из пула.
+     *
+     * @param position Позиция в файле
+     * @param bytes    Массив, байты которого будут записаны
+     * @param offset   Позиция в массиве
+     * @param length   Количество байт
+     * @return Это же открытие файла.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public BinaryFileChannel writeAt(long position, byte[] bytes, int offset, int length) {
+        ByteBuffer buffer = buffer();
+        int total = 0;
+        while (total < length) {
+            int part = Math.min(buffer.capacity(), length - total);
+            buffer.clear();
+            buffer.put(bytes, offset + total, part).flip();
+            writeAt(position + total, buffer);
+            total += part;
+        }
+        return this;
+    }
+
+    /**
+     * Запись массива в файл, начиная с указанной позиции.
+     *
+     * @param position Позиция в файле
+     * @param bytes    Байты, которые будут записаны
+     * @return Это же открытие файла.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public BinaryFileChannel writeAt(long position, byte[] bytes) {
+        return writeAt(position, bytes, 0, bytes.length);
+    }
+
+    /**
+     * Обрезка файла до указанного размера. Если файл меньше, он не изменяется.
+     *
+     * @param size Новый размер файла в байтах
+     * @return Это же открытие файла.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public BinaryFileChannel truncate(long size) {
+        try {
+            channel.truncate(size);
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+        return this;
+    }
+
+    /**
+     * Синхронизация содержимого файла с диском.
+     *
+     * @return Это же открытие файла.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public BinaryFileChannel force() {
+        try {
+            channel.force(false);
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+        return this;
+    }
+
+    /**
+     * Закрытие файла и возврат буфера в пул.
+     */
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        } finally {
+            if (buffer != null) pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    protected ByteBuffer buffer() {
+        if (buffer == null) buffer = pool.acquire(BUFFER_SIZE);
+        return buffer;
+    }
+
+    /**
+     * Чтение из канала, пока буфер не заполнится или не закончится файл.
+     *
+     * @return Количество прочитанных байт или -1, если позиция находится за концом файла.
+     */
+    static int readFully(FileChannel channel, long position, ByteBuffer destination) throws IOException {
+        int total = 0;
+        while (destination.hasRemaining()) {
+            int read = channel.read(destination, position + total);
+            if (read == -1) return total == 0 ? -1 : total;
+            total += read;
+        }
+        return total;
+    }
+
+    static int writeFully(FileChannel channel, long position, ByteBuffer source) throws IOException {
+        int total = 0;
+        while (source.hasRemaining()) total += channel.write(source, position + total);
+        return total;
+    }
+}
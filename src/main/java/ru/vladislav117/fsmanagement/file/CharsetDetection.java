@@ -0,0 +1,153 @@
+package ru.vladislav117.fsmanagement.file;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Определение кодировки текста по метке порядка байтов и начальному фрагменту.
+ */
+final class CharsetDetection {
+    static final int PREFIX_SIZE = 4096;
+    static final int UTF8_INVALID = 0;
+    static final int UTF8_ASCII = 1;
+    static final int UTF8_MULTIBYTE = 2;
+    static final String ASCII_SAMPLE = sample();
+
+    private CharsetDetection() {
+    }
+
+    /**
+     * Определение кодировки. Если в начале фрагмента есть метка порядка байтов, позиция буфера сдвигается за неё.
+     *
+     * @param prefix   Начальный фрагмент файла, подготовленный к чтению
+     * @param fallback Кодировка, используемая, если определить кодировку не удалось
+     * @return Кодировка.
+     */
+    static Charset detect(ByteBuffer prefix, Charset fallback) {
+        Charset bom = bomCharset(prefix);
+        if (bom != null) return skip(prefix, bomLength(bom), bom);
+        Charset utf16 = detectUtf16(prefix);
+        if (utf16 != null) return utf16;
+        int utf8 = checkUtf8(prefix);
+        if (utf8 == UTF8_MULTIBYTE) return StandardCharsets.UTF_8;
+        if (utf8 == UTF8_ASCII) return isAsciiCompatible(fallback) ? fallback : StandardCharsets.UTF_8;
+        return fallback;
+    }
+
+    /**
+     * Определение метки порядка байтов, подходящей к указанной кодировке. Если такая метка есть, позиция буфера
+     * сдвигается за неё. Для UTF-16 и UTF-32 порядок байтов берётся из метки, а без метки используется порядок
+     * от старшего байта.
+     *
+     * @param prefix  Начальный фрагмент файла, подготовленный к чтению
+     * @param charset Кодировка файла
+     * @return Кодировка с явным порядком байтов.
+     */
+    static Charset resolveBom(ByteBuffer prefix, Charset charset) {
+        Charset bom = bomCharset(prefix);
+        if (bom != null && family(bom).equals(family(charset))) return skip(prefix, bomLength(bom), bom);
+        if (charset.name().equals("UTF-16")) return StandardCharsets.UTF_16BE;
+        if (charset.name().equals("UTF-32")) return Charset.forName("UTF-32BE");
+        return charset;
+    }
+
+    /**
+     * Получение кодировки по метке порядка байтов в начале фрагмента. Позиция буфера не изменяется.
+     *
+     * @return Кодировка или null, если метки нет.
+     */
+    static Charset bomCharset(ByteBuffer prefix) {
+        int position = prefix.position();
+        int length = prefix.remaining();
+        int b0 = length > 0 ? prefix.get(position) & 0xFF : -1;
+        int b1 = length > 1 ? prefix.get(position + 1) & 0xFF : -1;
+        int b2 = length > 2 ? prefix.get(position + 2) & 0xFF : -1;
+        int b3 = length > 3 ? prefix.get(position + 3) & 0xFF : -1;
+        if (b0 == 0xEF && b1 == 0xBB && b2 == 0xBF) return StandardCharsets.UTF_8;
+        if (b0 == 0xFF && b1 == 0xFE && b2 == 0 && b3 == 0) return Charset.forName("UTF-32LE");
+        if (b0 == 0 && b1 == 0 && b2 == 0xFE && b3 == 0xFF) return Charset.forName("UTF-32BE");
+        if (b0 == 0xFF && b1 == 0xFE) return StandardCharsets.UTF_16LE;
+        if (b0 == 0xFE && b1 == 0xFF) return StandardCharsets.UTF_16BE;
+        return null;
+    }
+
+    static int bomLength(Charset charset) {
+        return switch (family(charset)) {
+            case "UTF-16" -> 2;
+            case "UTF-32" -> 4;
+            default -> 3;
+        };
+    }
+
+    private static String family(Charset charset) {
+        String name = charset.name();
+        return name.startsWith("UTF-16") || name.startsWith("UTF-32") ? name.substring(0, 6) : name;
+    }
+
+    static Charset skip(ByteBuffer prefix, int bomLength, Charset charset) {
+        prefix.position(prefix.position() + bomLength);
+        return charset;
+    }
+
+    /**
+     * Определение UTF-16 без метки порядка байтов по нулевым байтам, характерным для латиницы и цифр.
+     */
+    static Charset detectUtf16(ByteBuffer prefix) {
+        int pairs = prefix.remaining() / 2;
+        if (pairs < 2) return null;
+        int evenZeros = 0;
+        int oddZeros = 0;
+        for (int i = 0; i < pairs; i++) {
+            if (prefix.get(prefix.position() + 2 * i) == 0) evenZeros++;
+            if (prefix.get(prefix.position() + 2 * i + 1) == 0) oddZeros++;
+        }
+        if (oddZeros * 10 >= pairs * 4 && evenZeros * 10 < pairs) return StandardCharsets.UTF_16LE;
+        if (evenZeros * 10 >= pairs * 4 && oddZeros * 10 < pairs) return StandardCharsets.UTF_16BE;
+        return null;
+    }
+
+    /**
+     * Проверка, является ли фрагмент корректным UTF-8. Обрезанная последовательность в конце фрагмента допускается.
+     * Фрагмент только из ASCII не отличается от многих однобайтовых кодировок, поэтому такой случай
+     * возвращается отдельно.
+     *
+     * @return {@link #UTF8_INVALID}, {@link #UTF8_ASCII} или {@link #UTF8_MULTIBYTE}.
+     */
+    static int checkUtf8(ByteBuffer prefix) {
+        int index = prefix.position();
+        int end = prefix.limit();
+        boolean multibyte = false;
+        while (index < end) {
+            int b = prefix.get(index) & 0xFF;
+            int continuation;
+            if (b < 0x80) continuation = 0;
+            else if (b >= 0xC2 && b <= 0xDF) continuation = 1;
+            else if (b >= 0xE0 && b <= 0xEF) continuation = 2;
+            else if (b >= 0xF0 && b <= 0xF4) continuation = 3;
+            else return UTF8_INVALID;
+            for (int i = 1; i <= continuation; i++) {
+                if (index + i >= end) return multibyte ? UTF8_MULTIBYTE : UTF8_ASCII;
+                if ((prefix.get(index + i) & 0xC0) != 0x80) return UTF8_INVALID;
+            }
+            if (continuation > 0) multibyte = true;
+            index += continuation + 1;
+        }
+        return multibyte ? UTF8_MULTIBYTE : UTF8_ASCII;
+    }
+
+    /**
+     * Проверка, кодирует ли кодировка символы ASCII так же, как ASCII.
+     */
+    static boolean isAsciiCompatible(Charset charset) {
+        if (!charset.canEncode()) return false;
+        return Arrays.equals(ASCII_SAMPLE.getBytes(charset), ASCII_SAMPLE.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String sample() {
+        StringBuilder builder = new StringBuilder("\t\n\r");
+        for (char c = 0x20; c < 0x7F; c++) builder.append(c);
+        return builder.toString();
+    }
+}
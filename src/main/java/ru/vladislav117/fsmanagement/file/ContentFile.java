@@ -1,9 +1,17 @@
 package ru.vladislav117.fsmanagement.file;
 
+import org.apache.commons.io.FileUtils;
 import org.jetbrains.annotations.Nullable;
 import ru.vladislav117.fsmanagement.FSObject;
+import ru.vladislav117.fsmanagement.buffer.ByteBufferPool;
+import ru.vladislav117.fsmanagement.metrics.FSListener;
+import ru.vladislav117.fsmanagement.metrics.FSMetrics;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Function;
 
 /**
  * Файл, содержащий некоторый контент, который может быть прочитан или записан.
@@ -11,6 +19,8 @@ import java.io.IOException;
  * @param <Content> Тип контента
  */
 public abstract class ContentFile<Content> extends File {
+    protected @Nullable WriteBehind writeBehind = null;
+
     /**
      * Создание файла.
      *
@@ -81,8 +91,16 @@ public abstract class ContentFile<Content> extends File {
      * @return Прочитанная информация.
      */
     public Content read() {
+        if (writeBehind != null) {
+            WriteBehind.Pending<Content> pending = writeBehind.getPending(this);
+            if (pending != null) return copyOf(pending.content);
+        }
+        FSListener listener = FSMetrics.getListener();
+        long start = listener == null ? 0 : System.nanoTime();
         try {
-            return readUnsafe();
+            Content content = readUnsafe();
+            if (listener != null) listener.onRead(this, sizeOf(content), System.nanoTime() - start);
+            return content;
         } catch (IOException exception) {
             throw new RuntimeException(exception);
         }
@@ -115,6 +133,100 @@ public abstract class ContentFile<Content> extends File {
         }
     }
 
+    /**
+     * Получение копии контента, которую можно изменять независимо от исходного.
+     * Используется отложенной записью, чтобы изменение контента после записи или после чтения не меняло то, что будет
+     * записано на диск. Неизменяемый контент можно не копировать.
+     *
+     * @param content Контент
+     * @return Копия контента.
+     */
+    protected Content copyOf(Content content) {
+        return content;
+    }
+
+    /**
+     * Получение размера контента в байтах для сбора статистики.
+     * Вызывается только при включённом сборе статистики.
+     *
+     * @param content Контент
+     * @return Размер контента в байтах или -1, если он неизвестен.
+     */
+    protected long sizeOf(Content content) {
+        return location.length();
+    }
+
+    /**
+     * Чтение байтов файла в переданный буфер, начиная с начала файла.
+     * Читается столько байт, сколько помещается в буфер, или до конца файла. Позиция буфера сдвигается на количество
+     * прочитанных байт.
+     *
+     * @param destination Буфер, в который будут прочитаны байты
+     * @return Количество прочитанных байт.
+     */
+    public int readInto(ByteBuffer destination) {
+        FSListener listener = FSMetrics.getListener();
+        long start = listener == null ? 0 : System.nanoTime();
+        try (FileChannel channel = FileChannel.open(location.toPath(), StandardOpenOption.READ)) {
+            int total = 0;
+            while (destination.hasRemaining()) {
+                int read = channel.read(destination);
+                if (read == -1) break;
+                total += read;
+            }
+            if (listener != null) listener.onRead(this, total, System.nanoTime() - start);
+            return total;
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    /**
+     * Чтение всех байтов файла в буфер из пула по умолчанию.
+     * Возвращённый буфер подготовлен к чтению. После использования его следует вернуть в пул
+     * методом {@link ByteBufferPool#release(ByteBuffer)}.
+     *
+     * @return Буфер с содержимым файла.
+     */
+    public ByteBuffer readPooled() {
+        long length = location.length();
+        if (length > Integer.MAX_VALUE) throw new RuntimeException(new IOException("File is too large: " + location));
+        ByteBuffer buffer = ByteBufferPool.getDefault().acquire((int) length);
+        try {
+            readInto(buffer);
+        } catch (RuntimeException exception) {
+            ByteBufferPool.getDefault().release(buffer);
+            throw exception;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Замена содержимого файла оставшимися байтами буфера.
+     * Позиция буфера сдвигается на количество записанных байт.
+     *
+     * @param source Буфер, байты которого будут записаны
+     * @return Этот же файл.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public ContentFile<Content> writeFrom(ByteBuffer source) {
+        if (writeBehind != null) writeBehind.discard(this);
+        FSListener listener = FSMetrics.getListener();
+        long start = listener == null ? 0 : System.nanoTime();
+        try {
+            FileUtils.createParentDirectories(location);
+            try (FileChannel channel = FileChannel.open(location.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long total = 0;
+                while (source.hasRemaining()) total += channel.write(source);
+                if (listener != null) listener.onWrite(this, total, System.nanoTime() - start);
+            }
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+        return this;
+    }
+
     /**
      * Запись в файл. Может произойти ошибка ввода-вывода.
      *
@@ -130,13 +242,101 @@ public abstract class ContentFile<Content> extends File {
      */
     @SuppressWarnings("UnusedReturnValue")
     public ContentFile<Content> write(Content content) {
+        if (writeBehind != null) {
+            writeBehind.defer(this, content);
+            return this;
+        }
+        try {
+            writeNow(content);
+        } catch (IOException exception) {
+            FSListener listener = FSMetrics.getListener();
+            if (listener != null) listener.onSuppressedError(this, exception);
+        }
+        return this;
+    }
+
+    /**
+     * Запись в файл. Если произойдёт ошибка ввода-вывода, будет выброшено исключение.
+     *
+     * @param content Контент, который будет записан
+     * @return Этот же файл.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public ContentFile<Content> writeOrThrow(Content content) {
         try {
-            writeUnsafe(content);
-        } catch (IOException ignored) {
+            if (writeBehind == null) writeNow(content);
+            else writeBehind.writeThrough(this, content);
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
         }
         return this;
     }
 
+    /**
+     * Немедленная запись в файл со сбором статистики.
+     *
+     * @param content Контент, который будет записан
+     */
+    void writeNow(Content content) throws IOException {
+        FSListener listener = FSMetrics.getListener();
+        long start = listener == null ? 0 : System.nanoTime();
+        writeUnsafe(content);
+        if (listener != null) listener.onWrite(this, sizeOf(content), System.nanoTime() - start);
+    }
+
+    /**
+     * Получение отложенной записи файла.
+     *
+     * @return Отложенная запись или null, если файл записывается сразу.
+     */
+    public @Nullable WriteBehind getWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * Установка отложенной записи файла.
+     * Метод {@link #write(Object)} будет только запоминать контент, а {@link #read()} будет возвращать последний
+     * записанный контент, даже если он ещё не попал на диск. Методы {@link #writeOrThrow(Object)},
+     * {@link #writeLocked(Object)} и {@link #update(Function)} по-прежнему записывают сразу.
+     * Методы, работающие с байтами файла напрямую, например {@link #readInto(ByteBuffer)}, видят только контент
+     * на диске, поэтому перед ними следует вызвать {@link #flush()}. Позиционные методы {@link BinaryFile}
+     * записывают ожидающий контент на диск сами.
+     * Если файл ожидал записи в прежней отложенной записи, он будет записан на диск.
+     *
+     * @param writeBehind Отложенная запись или null, чтобы записывать сразу
+     * @return Этот же файл.
+     * @see WriteBehind#getDefault()
+     */
+    public ContentFile<Content> setWriteBehind(@Nullable WriteBehind writeBehind) {
+        if (this.writeBehind != null && this.writeBehind != writeBehind) this.writeBehind.flush(this);
+        this.writeBehind = writeBehind;
+        return this;
+    }
+
+    /**
+     * Запись на диск контента, ожидающего отложенной записи.
+     * Если отложенная запись не используется, ничего не произойдёт.
+     *
+     * @return Этот же файл.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public ContentFile<Content> flush() {
+        if (writeBehind != null) writeBehind.flush(this);
+        return this;
+    }
+
+    @Override
+    public boolean exists() {
+        if (writeBehind != null && writeBehind.isPending(this)) return true;
+        return super.exists();
+    }
+
+    @Override
+    public File delete() {
+        if (writeBehind != null) writeBehind.discard(this);
+        return super.delete();
+    }
+
     /**
      * Запись в файл, если такового не существует.
      *
@@ -148,4 +348,89 @@ public abstract class ContentFile<Content> extends File {
         if (!exists()) write(content);
         return this;
     }
+
+    /**
+     * Получение исключительной блокировки файла. Ожидает, пока блокировка не станет доступна.
+     * Блокировка действует как между потоками, так и между процессами, но только для кода, который тоже её использует.
+     * Поток, удерживающий разделяемую блокировку какого-либо файла, не может получить исключительную, в этом случае
+     * будет выброшено {@link IllegalStateException}.
+     *
+     * @return Блокировка, которую необходимо закрыть после использования.
+     */
+    public ContentFileLock lock() {
+        try {
+            return ContentFileLock.acquire(location, false);
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    /**
+     * Получение разделяемой блокировки файла. Ожидает, пока блокировка не станет доступна.
+     * Несколько разделяемых блокировок могут удерживаться одновременно, но не вместе с исключительной.
+     *
+     * @return Блокировка, которую необходимо закрыть после использования.
+     */
+    public ContentFileLock lockShared() {
+        try {
+            return ContentFileLock.acquire(location, true);
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    /**
+     * Чтение из файла под разделяемой блокировкой.
+     *
+     * @return Прочитанная информация.
+     */
+    public Content readLocked() {
+        try (ContentFileLock ignored = lockShared()) {
+            return read();
+        }
+    }
+
+    /**
+     * Запись в файл под исключительной блокировкой. Если произойдёт ошибка ввода-вывода, будет выброшено исключение.
+     *
+     * @param content Контент, который будет записан
+     * @return Этот же файл.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public ContentFile<Content> writeLocked(Content content) {
+        try (ContentFileLock ignored = lock()) {
+            return writeOrThrow(content);
+        }
+    }
+
+    /**
+     * Изменение содержимого файла под исключительной блокировкой.
+     * Между чтением и записью никакой другой код, использующий блокировки, не сможет изменить файл.
+     *
+     * @param updater Функция, получающая текущий контент (или null, если файла не существует) и возвращающая новый
+     * @return Новый контент.
+     */
+    public Content update(Function<@Nullable Content, Content> updater) {
+        try (ContentFileLock ignored = lock()) {
+            Content current = exists() ? read() : null;
+            Content updated = updater.apply(current);
+            writeOrThrow(updated);
+            return updated;
+        }
+    }
+
+    /**
+     * Получение такого же файла с другим расположением.
+     * Настройки файла, например кодировка текстового файла, сохраняются.
+     *
+     * @param location Новое расположение
+     * @return Файл с новым расположением.
+     */
+    @SuppressWarnings("unchecked")
+    public ContentFile<Content> relocated(java.io.File location) {
+        ContentFile<Content> file = asFile(getClass());
+        file.location = location;
+        file.writeBehind = writeBehind;
+        return file;
+    }
 }
@@ -0,0 +1,168 @@
+package ru.vladislav117.fsmanagement.file;
+
+import org.apache.commons.io.FileUtils;
+import ru.vladislav117.fsmanagement.directory.Directory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Блокировка файла.
+ * Внутри процесса потоки разделяются блокировками чтения-записи, выбираемыми по каноническому пути файла из
+ * фиксированного набора, поэтому конкуренция распределяется между путями, а не сосредоточена в одной глобальной
+ * блокировке. Между процессами используется блокировка {@link FileChannel#lock} служебного файла ".fsm-lock-имя"
+ * рядом с файлом. Этот файл остаётся после освобождения блокировки: удалять его нельзя, так как процесс, ожидающий
+ * блокировку, мог уже открыть его, и тогда два процесса получили бы блокировки разных файлов. Служебные файлы не видны
+ * при получении содержимого директории, см. {@link Directory#INTERNAL_PREFIX}.
+ * Ожидание блокировки другого процесса задерживает только потоки, блокирующие тот же файл.
+ * Разделяемую блокировку нельзя повысить до исключительной: поток, удерживающий разделяемую блокировку, не может
+ * получить исключительную ни того же файла, ни любого другого, так как файлы могут попасть в одну блокировку из
+ * набора. Такая попытка приводит к {@link IllegalStateException} вместо вечного ожидания. По той же причине не
+ * следует удерживать одновременно несколько блокировок разных файлов в разных потоках.
+ */
+public class ContentFileLock implements AutoCloseable {
+    protected static final String LOCK_FILE_PREFIX = Directory.INTERNAL_PREFIX + "lock-";
+    protected static final int STRIPE_COUNT = 64;
+    protected static final ReentrantReadWriteLock[] STRIPES = new ReentrantReadWriteLock[STRIPE_COUNT];
+    protected static final ConcurrentHashMap<String, ProcessLock> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    static {
+        for (int i = 0; i < STRIPE_COUNT; i++) STRIPES[i] = new ReentrantReadWriteLock();
+    }
+
+    protected final ProcessLock processLock;
+    protected final boolean shared;
+    protected final Lock threadLock;
+    protected boolean released = false;
+
+    protected ContentFileLock(ProcessLock processLock, boolean shared, Lock threadLock) {
+        this.processLock = processLock;
+        this.shared = shared;
+        this.threadLock = threadLock;
+    }
+
+    /**
+     * Получение блокировки файла. Ожидает, пока блокировка не станет доступна.
+     * Исключительную блокировку нельзя получить, удерживая разделяемую, так как это привело бы к вечному ожиданию.
+     *
+     * @param location Расположение файла
+     * @param shared   Разделяемая ли блокировка
+     * @return Блокировка.
+     */
+    static ContentFileLock acquire(java.io.File location, boolean shared) throws IOException {
+        java.io.File canonical = location.getCanonicalFile();
+        String key = canonical.getPath();
+        int hash = key.hashCode();
+        ReentrantReadWriteLock stripe = STRIPES[(hash ^ (hash >>> 16)) & (STRIPE_COUNT - 1)];
+        if (!shared && stripe.getReadHoldCount() > 0) {
+            throw new IllegalStateException("Cannot acquire an exclusive lock of " + key + " while holding a shared lock");
+        }
+        Lock threadLock = shared ? stripe.readLock() : stripe.writeLock();
+        threadLock.lock();
+        try {
+            java.io.File lockFile = new java.io.File(canonical.getParentFile(), LOCK_FILE_PREFIX + canonical.getName());
+            while (true) {
+                ProcessLock processLock = PROCESS_LOCKS.computeIfAbsent(key, ignored -> new ProcessLock(key, lockFile, shared));
+                if (processLock.retain()) return new ContentFileLock(processLock, shared, threadLock);
+            }
+        } catch (IOException | RuntimeException exception) {
+            threadLock.unlock();
+            throw exception;
+        }
+    }
+
+    /**
+     * Проверка, является ли блокировка разделяемой.
+     *
+     * @return Является ли блокировка разделяемой.
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * Освобождение блокировки. Повторное освобождение ничего не делает.
+     */
+    @Override
+    public void close() {
+        if (released) return;
+        released = true;
+        try {
+            processLock.release();
+        } finally {
+            threadLock.unlock();
+        }
+    }
+
+    /**
+     * Блокировка файла на уровне процесса. Захватывается первым потоком и освобождается последним.
+     * Запись в общей таблице создаётся без ввода-вывода, а ожидание блокировки другого процесса происходит под
+     * монитором самой записи, поэтому не задерживает операции с другими файлами.
+     * Все потоки, одновременно удерживающие запись, используют один режим, так как их разделяет блокировка из набора.
+     */
+    protected static class ProcessLock {
+        protected final String key;
+        protected final java.io.File lockFile;
+        protected final boolean shared;
+        protected FileChannel channel = null;
+        protected FileLock lock = null;
+        protected int count = 0;
+        protected boolean retired = false;
+
+        protected ProcessLock(String key, java.io.File lockFile, boolean shared) {
+            this.key = key;
+            this.lockFile = lockFile;
+            this.shared = shared;
+        }
+
+        /**
+         * Увеличение количества владельцев с захватом блокировки процесса первым из них.
+         *
+         * @return Удалось ли увеличить количество. Если запись уже удалена из таблицы, нужно получить новую.
+         */
+        protected synchronized boolean retain() throws IOException {
+            if (retired) return false;
+            if (lock == null) {
+                try {
+                    FileUtils.createParentDirectories(lockFile);
+                    channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    lock = channel.lock(0, Long.MAX_VALUE, shared);
+                } catch (IOException | RuntimeException exception) {
+                    if (channel != null) channel.close();
+                    channel = null;
+                    if (count == 0) retire();
+                    throw exception;
+                }
+            }
+            count++;
+            return true;
+        }
+
+        /**
+         * Уменьшение количества владельцев. Последний владелец освобождает блокировку процесса и удаляет запись из
+         * таблицы. Запись удаляется только после освобождения, поэтому новая запись того же файла не пересекается
+         * со старой блокировкой.
+         */
+        protected synchronized void release() {
+            if (--count > 0) return;
+            try {
+                lock.release();
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            lock = null;
+            channel = null;
+            retire();
+        }
+
+        protected void retire() {
+            retired = true;
+            PROCESS_LOCKS.remove(key, this);
+        }
+    }
+}
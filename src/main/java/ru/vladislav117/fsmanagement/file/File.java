@@ -2,8 +2,11 @@ package ru.vladislav117.fsmanagement.file;
 
 import org.apache.commons.io.FileUtils;
 import ru.vladislav117.fsmanagement.FSObject;
+import ru.vladislav117.fsmanagement.metrics.FSListener;
+import ru.vladislav117.fsmanagement.metrics.FSMetrics;
 
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
 
 /**
  * Файл.
@@ -110,9 +113,16 @@ public class File extends FSObject {
 
     @Override
     public File delete() {
+        FSListener listener = FSMetrics.getListener();
+        long start = listener == null ? 0 : System.nanoTime();
         try {
-            FileUtils.delete(location);
-        } catch (IOException ignored) {
+            try {
+                FileUtils.delete(location);
+            } catch (NoSuchFileException ignored) {
+            }
+            if (listener != null) listener.onDelete(this, System.nanoTime() - start);
+        } catch (IOException exception) {
+            if (listener != null) listener.onSuppressedError(this, exception);
         }
         return this;
     }
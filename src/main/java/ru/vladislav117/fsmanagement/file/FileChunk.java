@@ -0,0 +1,128 @@
+package ru.vladislav117.fsmanagement.file;
+
+import ru.vladislav117.fsmanagement.metrics.FSListener;
+import ru.vladislav117.fsmanagement.metrics.FSMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Непрерывный фрагмент файла.
+ * Каждый фрагмент читается через собственный канал с позиционным чтением, поэтому фрагменты одного файла
+ * можно обрабатывать в разных потоках.
+ */
+public class FileChunk {
+    /**
+     * Размер фрагмента по умолчанию.
+     */
+    public static final int DEFAULT_SIZE = 8 * 1024 * 1024;
+
+    protected final ContentFile<?> file;
+    protected final long position;
+    protected final int length;
+
+    /**
+     * Создание фрагмента файла.
+     *
+     * @param file     Файл
+     * @param position Позиция начала фрагмента в файле
+     * @param length   Длина фрагмента в байтах
+     */
+    public FileChunk(ContentFile<?> file, long position, int length) {
+        this.file = file;
+        this.position = position;
+        this.length = length;
+    }
+
+    /**
+     * Получение файла, которому принадлежит фрагмент.
+     *
+     * @return Файл.
+     */
+    public ContentFile<?> getFile() {
+        return file;
+    }
+
+    /**
+     * Получение позиции начала фрагмента в файле.
+     *
+     * @return Позиция начала фрагмента.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Получение длины фрагмента.
+     *
+     * @return Длина фрагмента в байтах.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Чтение фрагмента в переданный буфер.
+     * Читается столько байт фрагмента, сколько помещается в буфер. Позиция буфера сдвигается на количество
+     * прочитанных байт.
+     *
+     * @param destination Буфер, в который будут прочитаны байты
+     * @return Количество прочитанных байт.
+     */
+    public int readInto(ByteBuffer destination) {
+        FSListener listener = FSMetrics.getListener();
+        long start = listener == null ? 0 : System.nanoTime();
+        int limit = destination.limit();
+        if (destination.remaining() > length) destination.limit(destination.position() + length);
+        try (FileChannel channel = FileChannel.open(file.getLocation().toPath(), StandardOpenOption.READ)) {
+            int total = 0;
+            while (destination.hasRemaining()) {
+                int read = channel.read(destination, position + total);
+                if (read == -1) break;
+                total += read;
+            }
+            if (listener != null) listener.onRead(file, total, System.nanoTime() - start);
+            return total;
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        } finally {
+            destination.limit(limit);
+        }
+    }
+
+    /**
+     * Чтение фрагмента.
+     *
+     * @return Байты фрагмента. Массив может быть короче фрагмента, если файл был укорочен.
+     */
+    public byte[] read() {
+        byte[] bytes = new byte[length];
+        int read = readInto(ByteBuffer.wrap(bytes));
+        if (read == length) return bytes;
+        byte[] truncated = new byte[read];
+        System.arraycopy(bytes, 0, truncated, 0, read);
+        return truncated;
+    }
+
+    /**
+     * Отображение фрагмента в память только для чтения.
+     * Отображение остаётся действительным после закрытия канала и освобождается сборщиком мусора.
+     *
+     * @return Отображённый фрагмент.
+     */
+    public MappedByteBuffer map() {
+        try (FileChannel channel = FileChannel.open(file.getLocation().toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file.getLocation() + "[" + position + ", " + (position + length) + ")";
+    }
+}
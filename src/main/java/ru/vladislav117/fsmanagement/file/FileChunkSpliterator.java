@@ -0,0 +1,173 @@
+package ru.vladislav117.fsmanagement.file;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Разделитель файла на фрагменты для параллельных потоков.
+ * Диапазон делится пополам по границам фрагментов. Для текстовых файлов каждая граница сдвигается вперёд
+ * до ближайшего перевода строки, поэтому границы определяются лениво и каждая проверяется один раз.
+ *
+ * @param <Chunk> Класс фрагмента
+ */
+final class FileChunkSpliterator<Chunk extends FileChunk> implements Spliterator<Chunk> {
+    static final int SCAN_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Создание фрагмента по позиции и длине.
+     *
+     * @param <Chunk> Класс фрагмента
+     */
+    @FunctionalInterface
+    interface Factory<Chunk> {
+        Chunk create(long position, int length);
+    }
+
+    private final Path path;
+    private final int chunkSize;
+    private final @Nullable byte[] lineSeparator;
+    private final Factory<Chunk> factory;
+    private long position;
+    private final long end;
+
+    /**
+     * Создание разделителя файла.
+     *
+     * @param path          Путь к файлу
+     * @param chunkSize     Размер фрагмента в байтах
+     * @param lineSeparator Перевод строки в кодировке файла или null, если границы не выравниваются
+     * @param factory       Создание фрагмента
+     */
+    FileChunkSpliterator(Path path, int chunkSize, @Nullable byte[] lineSeparator, Factory<Chunk> factory) {
+        this(path, chunkSize, lineSeparator, factory, 0);
+    }
+
+    /**
+     * Создание разделителя файла, начиная с указанной позиции.
+     *
+     * @param path          Путь к файлу
+     * @param chunkSize     Размер фрагмента в байтах
+     * @param lineSeparator Перевод строки в кодировке файла или null, если границы не выравниваются
+     * @param factory       Создание фрагмента
+     * @param start         Позиция начала первого фрагмента, например после метки порядка байтов
+     */
+    FileChunkSpliterator(Path path, int chunkSize, @Nullable byte[] lineSeparator, Factory<Chunk> factory, long start) {
+        this(path, chunkSize, lineSeparator, factory, start, size(path));
+    }
+
+    private FileChunkSpliterator(Path path, int chunkSize, @Nullable byte[] lineSeparator, Factory<Chunk> factory, long position, long end) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        this.path = path;
+        this.chunkSize = lineSeparator == null ? chunkSize : Math.max(chunkSize, lineSeparator.length);
+        this.lineSeparator = lineSeparator;
+        this.factory = factory;
+        this.position = position;
+        this.end = end;
+    }
+
+    /**
+     * Получение перевода строки для поиска границ строк в указанной кодировке.
+     * Метка порядка байтов, которую добавляют некоторые кодировки, отбрасывается. Кодировка должна задавать
+     * порядок байтов явно, поэтому для UTF-16 и UTF-32 он сначала определяется по метке в файле.
+     *
+     * @param charset Кодировка
+     * @return Байты перевода строки.
+     */
+    static byte[] lineSeparator(Charset charset) {
+        byte[] encoded = "\n".getBytes(charset);
+        int unit = Math.min(encoded.length, Math.max(1, Math.round(charset.newEncoder().averageBytesPerChar())));
+        return Arrays.copyOfRange(encoded, encoded.length - unit, encoded.length);
+    }
+
+    static long size(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.size();
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Chunk> action) {
+        if (position >= end) return false;
+        long next = boundary(position + chunkSize);
+        long length = next - position;
+        if (length > Integer.MAX_VALUE) throw new RuntimeException(new IOException("Line is too long: " + path));
+        Chunk chunk = factory.create(position, (int) length);
+        position = next;
+        action.accept(chunk);
+        return true;
+    }
+
+    @Override
+    public @Nullable Spliterator<Chunk> trySplit() {
+        long chunks = (end - position + chunkSize - 1) / chunkSize;
+        if (chunks < 2) return null;
+        long middle = boundary(position + chunks / 2 * chunkSize);
+        if (middle >= end) return null;
+        FileChunkSpliterator<Chunk> prefix = new FileChunkSpliterator<>(path, chunkSize, lineSeparator, factory, position, middle);
+        position = middle;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return (end - position + chunkSize - 1) / chunkSize;
+    }
+
+    @Override
+    public int characteristics() {
+        int characteristics = ORDERED | NONNULL | IMMUTABLE;
+        if (lineSeparator == null) characteristics |= SIZED | SUBSIZED;
+        return characteristics;
+    }
+
+    /**
+     * Получение ближайшей границы фрагмента не раньше указанной позиции.
+     * Переводы строк ищутся только на позициях, кратных длине перевода строки, что верно для однобайтовых
+     * кодировок, UTF-8, UTF-16 и UTF-32.
+     *
+     * @param candidate Желаемая граница
+     * @return Граница фрагмента, не превышающая конец диапазона.
+     */
+    long boundary(long candidate) {
+        if (candidate >= end) return end;
+        if (lineSeparator == null) return candidate;
+        int unit = lineSeparator.length;
+        long scan = (candidate + unit - 1) / unit * unit - unit;
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE / unit * unit);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (scan < end) {
+                buffer.clear();
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, scan + buffer.position()) == -1) break;
+                }
+                buffer.flip();
+                if (buffer.remaining() < unit) return end;
+                for (int offset = 0; offset + unit <= buffer.limit(); offset += unit) {
+                    if (isLineSeparator(buffer, offset)) return Math.min(scan + offset + unit, end);
+                }
+                scan += buffer.limit() / unit * unit;
+            }
+            return end;
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    private boolean isLineSeparator(ByteBuffer buffer, int offset) {
+        for (int i = 0; i < lineSeparator.length; i++) {
+            if (buffer.get(offset + i) != lineSeparator[i]) return false;
+        }
+        return true;
+    }
+}
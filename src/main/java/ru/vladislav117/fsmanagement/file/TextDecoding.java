@@ -0,0 +1,118 @@
+package ru.vladislav117.fsmanagement.file;
+
+import org.jetbrains.annotations.Nullable;
+import ru.vladislav117.fsmanagement.buffer.ByteBufferPool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Декодирование текстовых файлов.
+ * Для UTF-8, ISO-8859-1 и US-ASCII байты файла читаются в один массив и сразу превращаются в строку, что позволяет
+ * JDK использовать быстрые пути компактных строк. Остальные кодировки декодируются потоково через переиспользуемые
+ * буферы.
+ */
+final class TextDecoding {
+    static final int BYTE_BUFFER_SIZE = 64 * 1024;
+    static final int CHAR_BUFFER_SIZE = 8 * 1024;
+    static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    static final ThreadLocal<CharBuffer> CHAR_BUFFERS = ThreadLocal.withInitial(() -> CharBuffer.allocate(CHAR_BUFFER_SIZE));
+
+    private TextDecoding() {
+    }
+
+    /**
+     * Проверка, поддерживается ли для кодировки декодирование напрямую в строку.
+     *
+     * @param charset Кодировка
+     * @return Поддерживается ли декодирование напрямую в строку.
+     */
+    static boolean isDirect(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.ISO_8859_1) || charset.equals(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Чтение файла в строку.
+     *
+     * @param path    Путь к файлу
+     * @param charset Кодировка
+     * @return Содержимое файла.
+     */
+    static String read(Path path, Charset charset) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return decode(channel, null, charset);
+        }
+    }
+
+    /**
+     * Декодирование оставшейся части файла.
+     *
+     * @param channel Канал, позиция которого указывает на первый непрочитанный байт
+     * @param prefix  Уже прочитанные из канала, но не декодированные байты, подготовленные к чтению, или null
+     * @param charset Кодировка
+     * @return Декодированный текст.
+     */
+    static String decode(FileChannel channel, @Nullable ByteBuffer prefix, Charset charset) throws IOException {
+        return isDirect(charset) ? decodeDirect(channel, prefix, charset) : decodeStreaming(channel, prefix, charset);
+    }
+
+    static String decodeDirect(FileChannel channel, @Nullable ByteBuffer prefix, Charset charset) throws IOException {
+        int prefixLength = prefix == null ? 0 : prefix.remaining();
+        long total = prefixLength + Math.max(channel.size() - channel.position(), 0);
+        if (total > MAX_ARRAY_SIZE) throw new IOException("File is too large to be read into a string: " + total + " bytes");
+        byte[] bytes = new byte[(int) total];
+        if (prefix != null) prefix.get(bytes, 0, prefixLength);
+        ByteBuffer target = ByteBuffer.wrap(bytes, prefixLength, bytes.length - prefixLength);
+        while (target.hasRemaining()) {
+            if (channel.read(target) == -1) break;
+        }
+        return new String(bytes, 0, target.position(), charset);
+    }
+
+    static String decodeStreaming(FileChannel channel, @Nullable ByteBuffer prefix, Charset charset) throws IOException {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        int prefixLength = prefix == null ? 0 : prefix.remaining();
+        long remaining = prefixLength + Math.max(channel.size() - channel.position(), 0);
+        StringBuilder builder = new StringBuilder((int) Math.min(remaining * decoder.averageCharsPerByte() + 16, MAX_ARRAY_SIZE));
+        ByteBufferPool pool = ByteBufferPool.getDefault();
+        ByteBuffer input = pool.acquire(Math.max(BYTE_BUFFER_SIZE, prefixLength));
+        CharBuffer output = CHAR_BUFFERS.get();
+        output.clear();
+        try {
+            if (prefix != null) input.put(prefix);
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                if (channel.read(input) == -1) endOfInput = true;
+                input.flip();
+                CoderResult result;
+                do {
+                    result = decoder.decode(input, output, endOfInput);
+                    if (result.isOverflow()) drain(output, builder);
+                    else if (result.isError()) result.throwException();
+                } while (result.isOverflow());
+                input.compact();
+            }
+            while (decoder.flush(output).isOverflow()) drain(output, builder);
+            drain(output, builder);
+            return builder.toString();
+        } finally {
+            pool.release(input);
+        }
+    }
+
+    static void drain(CharBuffer output, StringBuilder builder) {
+        builder.append(output.array(), output.arrayOffset(), output.position());
+        output.clear();
+    }
+}
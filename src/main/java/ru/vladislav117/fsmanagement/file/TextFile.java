@@ -3,17 +3,29 @@ package ru.vladislav117.fsmanagement.file;
 import org.apache.commons.io.FileUtils;
 import org.jetbrains.annotations.Nullable;
 import ru.vladislav117.fsmanagement.FSObject;
+import ru.vladislav117.fsmanagement.buffer.ByteBufferPool;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Текстовый файл.
  */
 public class TextFile extends ContentFile<String> {
+    protected static final String BOM = "\uFEFF";
+
     protected Charset charset = StandardCharsets.UTF_8;
+    protected boolean charsetDetection = false;
+    protected @Nullable Charset detectedCharset = null;
+    protected boolean detectedBom = false;
 
     /**
      * Создание файла.
@@ -89,16 +101,146 @@ public class TextFile extends ContentFile<String> {
      */
     public TextFile setCharset(Charset charset) {
         this.charset = charset;
+        detectedCharset = null;
+        detectedBom = false;
         return this;
     }
 
+    /**
+     * Проверка, включено ли определение кодировки при чтении.
+     *
+     * @return Включено ли определение кодировки.
+     */
+    public boolean isCharsetDetection() {
+        return charsetDetection;
+    }
+
+    /**
+     * Включение или выключение определения кодировки при чтении.
+     * Кодировка определяется по метке порядка байтов и начальному фрагменту файла, который затем используется
+     * при декодировании, поэтому файл читается один раз. Распознаются UTF-8, UTF-16 и UTF-32.
+     * Если кодировку определить не удалось, используется кодировка файла.
+     * Определённая кодировка запоминается и используется при последующей записи. Если у файла была метка порядка
+     * байтов, она записывается снова, чтобы кодировка определялась и после записи.
+     *
+     * @param charsetDetection Включить ли определение кодировки
+     * @return Этот же файл.
+     */
+    public TextFile setCharsetDetection(boolean charsetDetection) {
+        this.charsetDetection = charsetDetection;
+        if (!charsetDetection) {
+            detectedCharset = null;
+            detectedBom = false;
+        }
+        return this;
+    }
+
+    /**
+     * Получение кодировки, определённой при последнем чтении.
+     *
+     * @return Определённая кодировка или null, если файл ещё не читался с определением кодировки.
+     */
+    public @Nullable Charset getDetectedCharset() {
+        return detectedCharset;
+    }
+
+    /**
+     * Начало чтения строк, дописываемых в файл после вызова.
+     *
+     * @return Читатель новых строк, который необходимо закрыть после использования.
+     */
+    public TextFileFollower follow() {
+        return new TextFileFollower(this, false);
+    }
+
+    /**
+     * Начало чтения строк дописываемого файла.
+     *
+     * @param fromBeginning Читать ли файл с начала
+     * @return Читатель новых строк, который необходимо закрыть после использования.
+     */
+    public TextFileFollower follow(boolean fromBeginning) {
+        return new TextFileFollower(this, fromBeginning);
+    }
+
+    /**
+     * Разделение файла на фрагменты, выровненные по границам строк.
+     * Используется определённая при последнем чтении кодировка, если она есть, иначе кодировка файла.
+     * Метка порядка байтов в начале файла не входит в первый фрагмент. Для UTF-16 и UTF-32 порядок байтов
+     * определяется по ней.
+     *
+     * @param chunkSize Желаемый размер фрагмента в байтах
+     * @return Разделитель, возвращающий фрагменты по порядку.
+     */
+    public Spliterator<TextFileChunk> chunkSpliterator(int chunkSize) {
+        ByteBuffer prefix = ByteBuffer.allocate(4);
+        try (FileChannel channel = FileChannel.open(location.toPath(), StandardOpenOption.READ)) {
+            while (prefix.hasRemaining()) {
+                if (channel.read(prefix) == -1) break;
+            }
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+        prefix.flip();
+        Charset chunkCharset = CharsetDetection.resolveBom(prefix, detectedCharset == null ? charset : detectedCharset);
+        return new FileChunkSpliterator<>(location.toPath(), chunkSize, FileChunkSpliterator.lineSeparator(chunkCharset), (position, length) -> new TextFileChunk(this, position, length, chunkCharset), prefix.position());
+    }
+
+    /**
+     * Получение параллельного потока фрагментов файла, выровненных по границам строк.
+     * Фрагмент длиннее желаемого размера, если граница попадает внутрь строки, и содержит хотя бы одну строку целиком.
+     *
+     * @param chunkSize Желаемый размер фрагмента в байтах
+     * @return Параллельный поток фрагментов.
+     */
+    public Stream<TextFileChunk> chunks(int chunkSize) {
+        return StreamSupport.stream(chunkSpliterator(chunkSize), true);
+    }
+
+    /**
+     * Получение параллельного потока фрагментов файла размера по умолчанию, выровненных по границам строк.
+     *
+     * @return Параллельный поток фрагментов.
+     * @see FileChunk#DEFAULT_SIZE
+     */
+    public Stream<TextFileChunk> chunks() {
+        return chunks(FileChunk.DEFAULT_SIZE);
+    }
+
     @Override
     protected String readUnsafe() throws IOException {
-        return FileUtils.readFileToString(location, charset);
+        if (!charsetDetection) return TextDecoding.read(location.toPath(), charset);
+        ByteBufferPool pool = ByteBufferPool.getDefault();
+        try (FileChannel channel = FileChannel.open(location.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer prefix = pool.acquire(CharsetDetection.PREFIX_SIZE);
+            try {
+                while (prefix.hasRemaining()) {
+                    if (channel.read(prefix) == -1) break;
+                }
+                prefix.flip();
+                Charset detected = CharsetDetection.detect(prefix, charset);
+                detectedCharset = detected;
+                detectedBom = prefix.position() > 0;
+                return TextDecoding.decode(channel, prefix, detected);
+            } finally {
+                pool.release(prefix);
+            }
+        }
     }
 
     @Override
     protected void writeUnsafe(String content) throws IOException {
-        FileUtils.writeStringToFile(location, content, charset);
+        if (detectedCharset == null) FileUtils.writeStringToFile(location, content, charset);
+        else FileUtils.writeStringToFile(location, detectedBom ? BOM + content : content, detectedCharset);
+    }
+
+    @Override
+    public TextFile relocated(File location) {
+        TextFile file = (TextFile) super.relocated(location);
+        file.charset = charset;
+        file.charsetDetection = charsetDetection;
+        file.detectedCharset = detectedCharset;
+        file.detectedBom = detectedBom;
+        return file;
     }
 }
@@ -0,0 +1,59 @@
+package ru.vladislav117.fsmanagement.file;
+
+import java.nio.charset.Charset;
+import java.util.stream.Stream;
+
+/**
+ * Фрагмент текстового файла, выровненный по границам строк.
+ * Фрагмент начинается с начала строки и заканчивается после перевода строки или в конце файла.
+ */
+public class TextFileChunk extends FileChunk {
+    protected final Charset charset;
+
+    /**
+     * Создание фрагмента текстового файла.
+     *
+     * @param file     Файл
+     * @param position Позиция начала фрагмента в файле
+     * @param length   Длина фрагмента в байтах
+     * @param charset  Кодировка фрагмента
+     */
+    public TextFileChunk(TextFile file, long position, int length, Charset charset) {
+        super(file, position, length);
+        this.charset = charset;
+    }
+
+    @Override
+    public TextFile getFile() {
+        return (TextFile) file;
+    }
+
+    /**
+     * Получение кодировки фрагмента.
+     *
+     * @return Кодировка фрагмента.
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Чтение фрагмента как текста. Метка порядка байтов в начале файла отбрасывается.
+     *
+     * @return Текст фрагмента.
+     */
+    public String readText() {
+        String text = new String(read(), charset);
+        if (position == 0 && text.startsWith(TextFile.BOM)) return text.substring(TextFile.BOM.length());
+        return text;
+    }
+
+    /**
+     * Чтение строк фрагмента.
+     *
+     * @return Строки фрагмента без переводов строк.
+     */
+    public Stream<String> lines() {
+        return readText().lines();
+    }
+}
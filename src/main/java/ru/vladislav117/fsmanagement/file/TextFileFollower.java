@@ -0,0 +1,276 @@
+package ru.vladislav117.fsmanagement.file;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Чтение новых строк дописываемого текстового файла.
+ * Канал файла остаётся открытым на последней прочитанной позиции, поэтому каждое обновление стоит пропорционально
+ * количеству новых байт. Усечение файла и его замена другим файлом (ротация) обнаруживаются автоматически.
+ * Ожидание новых данных использует {@link WatchService}, а если он недоступен, периодический опрос.
+ * Строки разделяются байтом '\n', поэтому кодировка файла должна быть совместима с ASCII.
+ */
+public class TextFileFollower implements AutoCloseable {
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    protected final Path path;
+    protected final Charset charset;
+    protected final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    protected @Nullable FileChannel channel = null;
+    protected @Nullable Object fileKey = null;
+    protected long position;
+    protected byte[] pending = new byte[256];
+    protected int pendingLength = 0;
+    protected @Nullable WatchService watchService = null;
+    protected boolean watchServiceUnavailable = false;
+    protected long pollIntervalMillis = 1000;
+    protected volatile boolean closed = false;
+
+    /**
+     * Создание читателя.
+     *
+     * @param file          Текстовый файл
+     * @param fromBeginning Читать ли файл с начала. Иначе будут прочитаны только строки, дописанные после создания
+     */
+    public TextFileFollower(TextFile file, boolean fromBeginning) {
+        path = file.getLocation().toPath();
+        charset = file.getCharset();
+        try {
+            open();
+            position = (fromBeginning || channel == null) ? 0 : channel.size();
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    /**
+     * Получение позиции в файле, до которой прочитаны данные.
+     *
+     * @return Позиция в файле.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Получение интервала опроса файла.
+     *
+     * @return Интервал опроса в миллисекундах.
+     */
+    public long getPollIntervalMillis() {
+        return pollIntervalMillis;
+    }
+
+    /**
+     * Установка интервала опроса файла. Используется, если уведомления файловой системы недоступны или запаздывают.
+     *
+     * @param pollIntervalMillis Интервал опроса в миллисекундах
+     * @return Этот же читатель.
+     */
+    public TextFileFollower setPollIntervalMillis(long pollIntervalMillis) {
+        this.pollIntervalMillis = pollIntervalMillis;
+        return this;
+    }
+
+    protected void open() throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            fileKey = attributes.fileKey();
+        } catch (NoSuchFileException exception) {
+            channel = null;
+            fileKey = null;
+        }
+    }
+
+    protected void closeChannel() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        channel = null;
+    }
+
+    /**
+     * Получение новых полных строк без ожидания.
+     * Незавершённая последняя строка будет возвращена, когда в файл будет дописан её конец.
+     *
+     * @return Новые строки без символов конца строки.
+     */
+    public List<String> poll() {
+        if (closed) throw new IllegalStateException("Follower is closed");
+        List<String> lines = new ArrayList<>();
+        try {
+            if (channel == null) {
+                open();
+                position = 0;
+                pendingLength = 0;
+            }
+            if (channel == null) return lines;
+            if (channel.size() < position) {
+                position = 0;
+                pendingLength = 0;
+            }
+            readAvailable(lines);
+            if (isRotated()) {
+                closeChannel();
+                open();
+                position = 0;
+                pendingLength = 0;
+                if (channel != null) readAvailable(lines);
+            }
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+        return lines;
+    }
+
+    protected boolean isRotated() throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            Object currentKey = attributes.fileKey();
+            return currentKey != null && !Objects.equals(currentKey, fileKey);
+        } catch (NoSuchFileException exception) {
+            return false;
+        }
+    }
+
+    protected void readAvailable(List<String> lines) throws IOException {
+        FileChannel current = Objects.requireNonNull(channel);
+        while (true) {
+            buffer.clear();
+            int read = current.read(buffer, position);
+            if (read <= 0) return;
+            position += read;
+            byte[] bytes = buffer.array();
+            int lineStart = 0;
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] != '\n') continue;
+                lines.add(line(bytes, lineStart, i));
+                lineStart = i + 1;
+            }
+            appendPending(bytes, lineStart, read - lineStart);
+        }
+    }
+
+    protected String line(byte[] bytes, int start, int end) {
+        String line;
+        if (pendingLength == 0) {
+            int length = end - start;
+            if (length > 0 && bytes[end - 1] == '\r') length--;
+            line = new String(bytes, start, length, charset);
+        } else {
+            appendPending(bytes, start, end - start);
+            int length = pendingLength;
+            if (length > 0 && pending[length - 1] == '\r') length--;
+            line = new String(pending, 0, length, charset);
+            pendingLength = 0;
+        }
+        return line;
+    }
+
+    protected void appendPending(byte[] bytes, int start, int length) {
+        if (length == 0) return;
+        if (pendingLength + length > pending.length) {
+            byte[] grown = new byte[Math.max(pending.length * 2, pendingLength + length)];
+            System.arraycopy(pending, 0, grown, 0, pendingLength);
+            pending = grown;
+        }
+        System.arraycopy(bytes, start, pending, pendingLength, length);
+        pendingLength += length;
+    }
+
+    /**
+     * Ожидание новых полных строк.
+     *
+     * @param timeoutMillis Максимальное время ожидания в миллисекундах
+     * @return Новые строки. Если за время ожидания строк не появилось, список будет пустым.
+     */
+    public List<String> await(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (true) {
+            List<String> lines = poll();
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (!lines.isEmpty() || remaining <= 0 || closed) return lines;
+            waitForChange(Math.min(remaining, pollIntervalMillis));
+        }
+    }
+
+    /**
+     * Передача новых строк обработчику до закрытия читателя или прерывания потока.
+     *
+     * @param consumer Обработчик строк
+     */
+    public void follow(Consumer<String> consumer) throws InterruptedException {
+        while (!closed) {
+            for (String line : await(pollIntervalMillis)) consumer.accept(line);
+        }
+    }
+
+    protected void waitForChange(long timeoutMillis) throws InterruptedException {
+        WatchService service = watchService();
+        if (service == null) {
+            Thread.sleep(timeoutMillis);
+            return;
+        }
+        try {
+            WatchKey key = service.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            if (key == null) return;
+            key.pollEvents();
+            key.reset();
+        } catch (ClosedWatchServiceException ignored) {
+        }
+    }
+
+    protected @Nullable WatchService watchService() {
+        if (watchService != null || watchServiceUnavailable) return watchService;
+        Path parent = path.toAbsolutePath().getParent();
+        try {
+            WatchService service = path.getFileSystem().newWatchService();
+            try {
+                parent.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            } catch (IOException | RuntimeException exception) {
+                service.close();
+                throw exception;
+            }
+            watchService = service;
+        } catch (IOException | RuntimeException exception) {
+            watchServiceUnavailable = true;
+        }
+        return watchService;
+    }
+
+    /**
+     * Закрытие читателя и освобождение канала файла.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        closeChannel();
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
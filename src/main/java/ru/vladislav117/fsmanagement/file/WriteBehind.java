@@ -0,0 +1,327 @@
+package ru.vladislav117.fsmanagement.file;
+
+import org.jetbrains.annotations.Nullable;
+import ru.vladislav117.fsmanagement.metrics.FSListener;
+import ru.vladislav117.fsmanagement.metrics.FSMetrics;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отложенная запись файлов.
+ * Хранит последний записанный контент каждого файла в памяти и записывает его на диск с заданным интервалом,
+ * при вызове {@link #flush()}, при закрытии и при завершении программы. Частые записи одного файла
+ * объединяются, поэтому за интервал файл записывается на диск не более одного раза.
+ * Файлы, использующие отложенную запись, задаются методом {@link ContentFile#setWriteBehind(WriteBehind)}.
+ * Все отложенные записи используют один общий поток и один общий обработчик завершения программы.
+ * Отложенная запись, у которой нет ожидающих файлов, не удерживается библиотекой и может быть собрана сборщиком
+ * мусора без закрытия.
+ */
+public class WriteBehind implements AutoCloseable {
+    /**
+     * Интервал записи на диск по умолчанию.
+     */
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+    protected static final long SYSCALLS_PER_WRITE = 3;
+    protected static final Set<WriteBehind> ACTIVE = ConcurrentHashMap.newKeySet();
+
+    protected final long flushIntervalMillis;
+    protected final ConcurrentHashMap<Path, Pending<?>> pending = new ConcurrentHashMap<>();
+    protected final Object flushLock = new Object();
+    protected final ScheduledFuture<?> flushTask;
+    protected volatile boolean closed = false;
+
+    /**
+     * Создание отложенной записи с интервалом по умолчанию.
+     */
+    public WriteBehind() {
+        this(DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Создание отложенной записи.
+     *
+     * @param flushIntervalMillis Интервал записи на диск в миллисекундах
+     */
+    public WriteBehind(long flushIntervalMillis) {
+        if (flushIntervalMillis <= 0) throw new IllegalArgumentException("Flush interval must be positive: " + flushIntervalMillis);
+        this.flushIntervalMillis = flushIntervalMillis;
+        FlushTask task = new FlushTask(this);
+        flushTask = Scheduler.SCHEDULER.scheduleWithFixedDelay(task, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        task.future = flushTask;
+    }
+
+    /**
+     * Получение отложенной записи по умолчанию. Создаётся при первом обращении.
+     *
+     * @return Отложенная запись по умолчанию.
+     */
+    public static WriteBehind getDefault() {
+        return DefaultHolder.DEFAULT;
+    }
+
+    /**
+     * Получение интервала записи на диск.
+     *
+     * @return Интервал записи в миллисекундах.
+     */
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    /**
+     * Получение количества файлов, ожидающих записи на диск.
+     *
+     * @return Количество файлов.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Проверка, ожидает ли файл записи на диск.
+     *
+     * @param file Файл
+     * @return Ожидает ли файл записи.
+     */
+    public boolean isPending(ContentFile<?> file) {
+        return pending.containsKey(key(file));
+    }
+
+    /**
+     * Запись на диск всех ожидающих файлов. После возврата весь ранее записанный контент находится на диске.
+     * Если произойдёт ошибка ввода-вывода, остальные файлы всё равно будут записаны, а затем будет выброшено
+     * исключение. Файлы с ошибкой остаются ожидающими.
+     *
+     * @return Эта же отложенная запись.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public WriteBehind flush() {
+        flush(true);
+        return this;
+    }
+
+    /**
+     * Запись на диск одного файла, если он ожидает записи.
+     *
+     * @param file Файл
+     * @return Эта же отложенная запись.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public WriteBehind flush(ContentFile<?> file) {
+        Path key = key(file);
+        synchronized (flushLock) {
+            Pending<?> entry = pending.get(key);
+            if (entry == null) return this;
+            try {
+                entry.write();
+                pending.remove(key, entry);
+            } catch (IOException exception) {
+                throw new RuntimeException(exception);
+            }
+        }
+        untrack();
+        return this;
+    }
+
+    /**
+     * Остановка записи по расписанию и запись на диск всех ожидающих файлов.
+     * Последующие отложенные записи выполняются сразу.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flushTask.cancel(false);
+        flush(true);
+    }
+
+    /**
+     * Запись на диск всех ожидающих файлов.
+     * Контент удаляется из памяти только после записи и только если он не был заменён за время записи,
+     * поэтому чтение всегда видит последний записанный контент.
+     * Если ожидающих файлов не осталось, отложенная запись перестаёт удерживаться библиотекой.
+     *
+     * @param throwErrors Выбрасывать ли первую ошибку после записи остальных файлов
+     */
+    protected void flush(boolean throwErrors) {
+        @Nullable IOException error = null;
+        synchronized (flushLock) {
+            for (Map.Entry<Path, Pending<?>> entry : pending.entrySet()) {
+                Pending<?> value = entry.getValue();
+                try {
+                    value.write();
+                    pending.remove(entry.getKey(), value);
+                } catch (IOException exception) {
+                    if (error == null) error = exception;
+                    FSListener listener = FSMetrics.getListener();
+                    if (listener != null) listener.onSuppressedError(value.file, exception);
+                }
+            }
+        }
+        untrack();
+        if (throwErrors && error != null) throw new RuntimeException(error);
+    }
+
+    /**
+     * Откладывание записи контента. Если файл уже ожидает записи, его контент заменяется.
+     *
+     * @param file      Файл
+     * @param content   Контент
+     * @param <Content> Тип контента
+     */
+    <Content> void defer(ContentFile<Content> file, Content content) {
+        Pending<?> previous = pending.put(key(file), new Pending<>(file, file.copyOf(content)));
+        ACTIVE.add(this);
+        if (previous != null) {
+            FSListener listener = FSMetrics.getListener();
+            if (listener != null) listener.onSyscallsAvoided(file, SYSCALLS_PER_WRITE);
+        }
+        if (closed) flush(file);
+    }
+
+    /**
+     * Немедленная запись контента, заменяющая ожидающий контент файла.
+     *
+     * @param file      Файл
+     * @param content   Контент
+     * @param <Content> Тип контента
+     */
+    <Content> void writeThrough(ContentFile<Content> file, Content content) throws IOException {
+        synchronized (flushLock) {
+            pending.remove(key(file));
+            file.writeNow(content);
+        }
+        untrack();
+    }
+
+    /**
+     * Отмена ожидающей записи файла.
+     *
+     * @param file Файл
+     */
+    void discard(ContentFile<?> file) {
+        synchronized (flushLock) {
+            pending.remove(key(file));
+        }
+        untrack();
+    }
+
+    /**
+     * Отмена ожидающей записи файла во всех отложенных записях.
+     * Вызывается перед заменой файла в обход {@link ContentFile#write(Object)}, например другим процессом или
+     * при применении транзакции директории, чтобы последующая запись по расписанию не затёрла новое содержимое.
+     * Ожидающий контент файла теряется.
+     *
+     * @param location Расположение файла
+     */
+    public static void discardPending(java.io.File location) {
+        Path key = location.toPath().toAbsolutePath().normalize();
+        for (WriteBehind writeBehind : ACTIVE) {
+            if (!writeBehind.pending.containsKey(key)) continue;
+            synchronized (writeBehind.flushLock) {
+                writeBehind.pending.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Получение ожидающей записи файла.
+     * Если файл ожидает записи как файл другого типа, этот контент сначала записывается на диск.
+     *
+     * @param file      Файл
+     * @param <Content> Тип контента
+     * @return Ожидающая запись или null, если файл не ожидает записи.
+     */
+    @SuppressWarnings("unchecked")
+    <Content> @Nullable Pending<Content> getPending(ContentFile<Content> file) {
+        Pending<?> entry = pending.get(key(file));
+        if (entry == null) return null;
+        if (entry.file.getClass() != file.getClass()) {
+            flush(file);
+            return null;
+        }
+        return (Pending<Content>) entry;
+    }
+
+    /**
+     * Прекращение удержания отложенной записи, если у неё не осталось ожидающих файлов.
+     * Проверка после удаления не пропускает файл, отложенный одновременно с удалением.
+     */
+    protected void untrack() {
+        if (!pending.isEmpty()) return;
+        ACTIVE.remove(this);
+        if (!pending.isEmpty()) ACTIVE.add(this);
+    }
+
+    protected static Path key(ContentFile<?> file) {
+        return file.getLocation().toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * Контент, ожидающий записи.
+     *
+     * @param <Content> Тип контента
+     */
+    static final class Pending<Content> {
+        final ContentFile<Content> file;
+        final Content content;
+
+        Pending(ContentFile<Content> file, Content content) {
+            this.file = file;
+            this.content = content;
+        }
+
+        void write() throws IOException {
+            file.writeNow(content);
+        }
+    }
+
+    /**
+     * Запись по расписанию. Ссылается на отложенную запись слабо и отменяется, когда та собрана сборщиком мусора.
+     * Отложенная запись с ожидающими файлами удерживается в {@link #ACTIVE}, поэтому её контент не теряется.
+     */
+    private static final class FlushTask implements Runnable {
+        final WeakReference<WriteBehind> reference;
+        volatile @Nullable ScheduledFuture<?> future = null;
+
+        FlushTask(WriteBehind writeBehind) {
+            reference = new WeakReference<>(writeBehind);
+        }
+
+        @Override
+        public void run() {
+            WriteBehind writeBehind = reference.get();
+            if (writeBehind != null) writeBehind.flush(false);
+            else if (future != null) future.cancel(false);
+        }
+    }
+
+    /**
+     * Общий поток записи по расписанию и общий обработчик завершения программы.
+     */
+    private static final class Scheduler {
+        static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fsmanagement-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                for (WriteBehind writeBehind : ACTIVE) writeBehind.flush(false);
+            }, "fsmanagement-write-behind-shutdown"));
+        }
+    }
+
+    private static final class DefaultHolder {
+        static final WriteBehind DEFAULT = new WriteBehind(DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+}
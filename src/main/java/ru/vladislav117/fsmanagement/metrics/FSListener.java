@@ -0,0 +1,68 @@
+package ru.vladislav117.fsmanagement.metrics;
+
+import ru.vladislav117.fsmanagement.FSObject;
+
+import java.io.IOException;
+
+/**
+ * Слушатель операций над объектами файловой системы.
+ * Все методы имеют пустую реализацию по умолчанию, поэтому достаточно переопределить только нужные.
+ */
+public interface FSListener {
+    /**
+     * Вызывается после чтения из файла.
+     *
+     * @param object Объект файловой системы
+     * @param bytes  Количество прочитанных байт или -1, если оно неизвестно
+     * @param nanos  Длительность операции в наносекундах
+     */
+    default void onRead(FSObject object, long bytes, long nanos) {
+    }
+
+    /**
+     * Вызывается после записи в файл.
+     *
+     * @param object Объект файловой системы
+     * @param bytes  Количество записанных байт или -1, если оно неизвестно
+     * @param nanos  Длительность операции в наносекундах
+     */
+    default void onWrite(FSObject object, long bytes, long nanos) {
+    }
+
+    /**
+     * Вызывается после получения содержимого директории.
+     *
+     * @param object  Объект файловой системы
+     * @param entries Количество найденных объектов
+     * @param nanos   Длительность операции в наносекундах
+     */
+    default void onList(FSObject object, long entries, long nanos) {
+    }
+
+    /**
+     * Вызывается после удаления объекта.
+     *
+     * @param object Объект файловой системы
+     * @param nanos  Длительность операции в наносекундах
+     */
+    default void onDelete(FSObject object, long nanos) {
+    }
+
+    /**
+     * Вызывается, когда операция обошлась без части системных вызовов.
+     *
+     * @param object Объект файловой системы
+     * @param count  Количество системных вызовов, которых удалось избежать
+     */
+    default void onSyscallsAvoided(FSObject object, long count) {
+    }
+
+    /**
+     * Вызывается при ошибке ввода-вывода, которая была проигнорирована библиотекой.
+     *
+     * @param object    Объект файловой системы
+     * @param exception Ошибка ввода-вывода
+     */
+    default void onSuppressedError(FSObject object, IOException exception) {
+    }
+}
@@ -0,0 +1,41 @@
+package ru.vladislav117.fsmanagement.metrics;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Точка подключения слушателя операций над файловой системой.
+ * Пока слушатель не установлен, библиотека не замеряет время и не собирает статистику.
+ */
+public final class FSMetrics {
+    private static volatile @Nullable FSListener listener = null;
+
+    private FSMetrics() {
+    }
+
+    /**
+     * Получение текущего слушателя.
+     *
+     * @return Текущий слушатель или null, если сбор статистики выключен.
+     */
+    public static @Nullable FSListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Установка слушателя.
+     *
+     * @param listener Слушатель или null для выключения сбора статистики
+     */
+    public static void setListener(@Nullable FSListener listener) {
+        FSMetrics.listener = listener;
+    }
+
+    /**
+     * Проверка, включён ли сбор статистики.
+     *
+     * @return Включён ли сбор статистики.
+     */
+    public static boolean isEnabled() {
+        return listener != null;
+    }
+}
@@ -0,0 +1,74 @@
+package ru.vladislav117.fsmanagement.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма длительностей операций.
+ * Значения раскладываются по корзинам, границы которых являются степенями двойки наносекунд.
+ */
+public class LatencyHistogram {
+    protected static final int BUCKET_COUNT = 64;
+
+    protected final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    protected final LongAdder count = new LongAdder();
+    protected final LongAdder totalNanos = new LongAdder();
+
+    /**
+     * Добавление значения в гистограмму.
+     *
+     * @param nanos Длительность операции в наносекундах
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets.incrementAndGet(BUCKET_COUNT - 1 - Long.numberOfLeadingZeros(nanos | 1));
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    /**
+     * Получение количества значений.
+     *
+     * @return Количество значений.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Получение суммарной длительности.
+     *
+     * @return Суммарная длительность в наносекундах.
+     */
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * Получение оценки перцентиля сверху.
+     *
+     * @param percentile Перцентиль от 0 до 100
+     * @return Верхняя граница корзины, в которую попадает перцентиль, в наносекундах.
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) total += buckets.get(i);
+        if (total == 0) return 0;
+        long threshold = (long) Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= threshold && seen > 0) return i == BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Сброс гистограммы.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) buckets.set(i, 0);
+        count.reset();
+        totalNanos.reset();
+    }
+}
@@ -0,0 +1,192 @@
+package ru.vladislav117.fsmanagement.metrics;
+
+import ru.vladislav117.fsmanagement.FSObject;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Слушатель, накапливающий статистику в памяти процесса.
+ * Подходит для тестов и для периодической выгрузки во внешнюю систему мониторинга.
+ */
+public class MemoryFSListener implements FSListener {
+    protected final LongAdder bytesRead = new LongAdder();
+    protected final LongAdder bytesWritten = new LongAdder();
+    protected final LongAdder entriesListed = new LongAdder();
+    protected final LongAdder deletes = new LongAdder();
+    protected final LongAdder syscallsAvoided = new LongAdder();
+    protected final LongAdder suppressedErrors = new LongAdder();
+    protected final LatencyHistogram readLatency = new LatencyHistogram();
+    protected final LatencyHistogram writeLatency = new LatencyHistogram();
+    protected final LatencyHistogram listLatency = new LatencyHistogram();
+    protected final LatencyHistogram deleteLatency = new LatencyHistogram();
+
+    @Override
+    public void onRead(FSObject object, long bytes, long nanos) {
+        if (bytes > 0) bytesRead.add(bytes);
+        readLatency.record(nanos);
+    }
+
+    @Override
+    public void onWrite(FSObject object, long bytes, long nanos) {
+        if (bytes > 0) bytesWritten.add(bytes);
+        writeLatency.record(nanos);
+    }
+
+    @Override
+    public void onList(FSObject object, long entries, long nanos) {
+        entriesListed.add(entries);
+        listLatency.record(nanos);
+    }
+
+    @Override
+    public void onDelete(FSObject object, long nanos) {
+        deletes.increment();
+        deleteLatency.record(nanos);
+    }
+
+    @Override
+    public void onSyscallsAvoided(FSObject object, long count) {
+        syscallsAvoided.add(count);
+    }
+
+    @Override
+    public void onSuppressedError(FSObject object, IOException exception) {
+        suppressedErrors.increment();
+    }
+
+    /**
+     * Получение количества прочитанных байт.
+     *
+     * @return Количество прочитанных байт.
+     */
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * Получение количества записанных байт.
+     *
+     * @return Количество записанных байт.
+     */
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    /**
+     * Получение количества объектов, найденных при получении содержимого директорий.
+     *
+     * @return Количество найденных объектов.
+     */
+    public long getEntriesListed() {
+        return entriesListed.sum();
+    }
+
+    /**
+     * Получение количества удалений.
+     *
+     * @return Количество удалений.
+     */
+    public long getDeletes() {
+        return deletes.sum();
+    }
+
+    /**
+     * Получение количества системных вызовов, которых удалось избежать.
+     *
+     * @return Количество системных вызовов.
+     */
+    public long getSyscallsAvoided() {
+        return syscallsAvoided.sum();
+    }
+
+    /**
+     * Получение количества проигнорированных ошибок ввода-вывода.
+     *
+     * @return Количество проигнорированных ошибок.
+     */
+    public long getSuppressedErrors() {
+        return suppressedErrors.sum();
+    }
+
+    /**
+     * Получение гистограммы длительностей чтения.
+     *
+     * @return Гистограмма длительностей чтения.
+     */
+    public LatencyHistogram getReadLatency() {
+        return readLatency;
+    }
+
+    /**
+     * Получение гистограммы длительностей записи.
+     *
+     * @return Гистограмма длительностей записи.
+     */
+    public LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    /**
+     * Получение гистограммы длительностей получения содержимого директорий.
+     *
+     * @return Гистограмма длительностей получения содержимого директорий.
+     */
+    public LatencyHistogram getListLatency() {
+        return listLatency;
+    }
+
+    /**
+     * Получение гистограммы длительностей удаления.
+     *
+     * @return Гистограмма длительностей удаления.
+     */
+    public LatencyHistogram getDeleteLatency() {
+        return deleteLatency;
+    }
+
+    /**
+     * Получение снимка всех счётчиков.
+     *
+     * @return Значения счётчиков по именам.
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        snapshot.put("bytes.read", getBytesRead());
+        snapshot.put("bytes.written", getBytesWritten());
+        snapshot.put("entries.listed", getEntriesListed());
+        snapshot.put("deletes", getDeletes());
+        snapshot.put("syscalls.avoided", getSyscallsAvoided());
+        snapshot.put("errors.suppressed", getSuppressedErrors());
+        putLatency(snapshot, "read", readLatency);
+        putLatency(snapshot, "write", writeLatency);
+        putLatency(snapshot, "list", listLatency);
+        putLatency(snapshot, "delete", deleteLatency);
+        return snapshot;
+    }
+
+    protected static void putLatency(Map<String, Long> snapshot, String name, LatencyHistogram histogram) {
+        snapshot.put(name + ".count", histogram.getCount());
+        snapshot.put(name + ".nanos.total", histogram.getTotalNanos());
+        snapshot.put(name + ".nanos.p50", histogram.getPercentile(50));
+        snapshot.put(name + ".nanos.p99", histogram.getPercentile(99));
+    }
+
+    /**
+     * Сброс всех счётчиков.
+     */
+    public void reset() {
+        bytesRead.reset();
+        bytesWritten.reset();
+        entriesListed.reset();
+        deletes.reset();
+        syscallsAvoided.reset();
+        suppressedErrors.reset();
+        readLatency.reset();
+        writeLatency.reset();
+        listLatency.reset();
+        deleteLatency.reset();
+    }
+}
@@ -0,0 +1,525 @@
+package ru.vladislav117.fsmanagement.store;
+
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.Nullable;
+import ru.vladislav117.fsmanagement.directory.Directory;
+import ru.vladislav117.fsmanagement.file.BinaryFile;
+import ru.vladislav117.fsmanagement.file.ContentFileLock;
+import ru.vladislav117.fsmanagement.file.File;
+import ru.vladislav117.fsmanagement.file.TextFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище бинарных данных, адресуемых по содержимому.
+ * Одинаковые данные хранятся один раз под путём, составленным из их хеша SHA-256 ("objects/ab/cd/abcd..."), а
+ * именованные ссылки ("refs/имя") указывают на хеш. Для каждого хеша ведётся счётчик ссылок, и данные удаляются,
+ * когда исчезает последняя ссылка.
+ * Хеш вычисляется одновременно с записью, поэтому данные читаются один раз.
+ * Счётчики и имена блокируются по сегментам ("locks/counts-ab", "locks/refs-ab"), поэтому количество файлов
+ * блокировок ограничено и не растёт вместе с количеством данных.
+ * Счётчики и имена заменяются атомарно через временный файл. Счётчик увеличивается до записи имени и уменьшается
+ * после его удаления, поэтому после сбоя он может оказаться только больше настоящего количества имён, и данные не
+ * будут удалены раньше времени. Лишние ссылки и данные без имён удаляет {@link #repair()}.
+ * Опустевшие директории шардов удаляются вместе с последними данными и именами в них.
+ */
+public class BlobStore {
+    protected static final String OBJECTS = "objects";
+    protected static final String COUNTS = "counts";
+    protected static final String REFS = "refs";
+    protected static final String TEMP = "tmp";
+    protected static final String LOCKS = "locks";
+    protected static final int LOCK_SEGMENTS = 256;
+    protected static final int BUFFER_SIZE = 64 * 1024;
+    protected static final int MAX_MOVE_ATTEMPTS = 8;
+
+    protected final Directory directory;
+
+    /**
+     * Создание хранилища.
+     *
+     * @param directory Директория хранилища
+     */
+    public BlobStore(Directory directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Получение директории хранилища.
+     *
+     * @return Директория хранилища.
+     */
+    public Directory getDirectory() {
+        return directory;
+    }
+
+    protected static String shardedPath(String hash) {
+        return hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash;
+    }
+
+    protected static void checkHash(String hash) {
+        if (hash.length() != 64 || !hash.chars().allMatch(c -> (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+            throw new IllegalArgumentException("Invalid blob hash: " + hash);
+        }
+    }
+
+    protected TextFile referenceFile(String name) {
+        Path refs = directory.getLocation().toPath().resolve(REFS).toAbsolutePath().normalize();
+        Path reference = refs.resolve(name).normalize();
+        if (name.isEmpty() || !reference.startsWith(refs) || reference.equals(refs)) {
+            throw new IllegalArgumentException("Invalid reference name: " + name);
+        }
+        return new TextFile(reference.toFile());
+    }
+
+    protected TextFile countFile(String hash) {
+        return directory.getChildFile(TextFile.class, COUNTS + "/" + shardedPath(hash));
+    }
+
+    protected ContentFileLock lockCount(String hash) {
+        return lockSegment(COUNTS, Integer.parseInt(hash.substring(0, 2), 16));
+    }
+
+    protected ContentFileLock lockReference(String name) {
+        int hash = name.hashCode();
+        return lockSegment(REFS, (hash ^ (hash >>> 16)) & (LOCK_SEGMENTS - 1));
+    }
+
+    protected ContentFileLock lockSegment(String kind, int segment) {
+        return directory.getChildFile(BinaryFile.class, LOCKS + "/" + kind + "-" + String.format("%02x", segment)).lock();
+    }
+
+    /**
+     * Получение файла с данными по хешу. Файл не следует изменять.
+     *
+     * @param hash Хеш данных
+     * @return Файл с данными.
+     */
+    public BinaryFile getBlob(String hash) {
+        checkHash(hash);
+        return directory.getChildFile(BinaryFile.class, OBJECTS + "/" + shardedPath(hash));
+    }
+
+    /**
+     * Проверка наличия данных в хранилище.
+     *
+     * @param hash Хеш данных
+     * @return Есть ли данные в хранилище.
+     */
+    public boolean contains(String hash) {
+        return getBlob(hash).exists();
+    }
+
+    /**
+     * Сохранение данных под именем. Если данные с таким же содержимым уже есть, они не записываются повторно.
+     * Если имя уже указывало на другие данные, ссылка на них будет удалена.
+     *
+     * @param name  Имя
+     * @param input Поток данных. Не закрывается
+     * @return Хеш данных.
+     */
+    public String put(String name, InputStream input) {
+        TextFile reference = referenceFile(name);
+        Path temp = null;
+        try {
+            MessageDigest digest = newDigest();
+            temp = writeTemp(input, digest);
+            String hash = toHex(digest.digest());
+            try (ContentFileLock ignored = lockCount(hash)) {
+                Path blob = getBlob(hash).getLocation().toPath();
+                if (Files.exists(blob)) {
+                    Files.delete(temp);
+                } else {
+                    Files.createDirectories(blob.getParent());
+                    move(temp, blob);
+                }
+                temp = null;
+                increment(hash);
+            }
+            replaceReference(name, reference, hash);
+            return hash;
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        } finally {
+            if (temp != null) FileUtils.deleteQuietly(temp.toFile());
+        }
+    }
+
+    /**
+     * Сохранение данных под именем.
+     * Хеш вычисляется до записи, поэтому если такие данные уже есть, на диск записывается только имя.
+     *
+     * @param name    Имя
+     * @param content Данные
+     * @return Хеш данных.
+     */
+    public String put(String name, byte[] content) {
+        TextFile reference = referenceFile(name);
+        MessageDigest digest = newDigest();
+        digest.update(content);
+        String hash = toHex(digest.digest());
+        if (linkExisting(name, reference, hash)) return hash;
+        return put(name, new ByteArrayInputStream(content));
+    }
+
+    /**
+     * Сохранение содержимого файла под именем.
+     * Хеш вычисляется до записи, поэтому если такие данные уже есть, на диск записывается только имя. Иначе файл
+     * читается второй раз при записи.
+     *
+     * @param name Имя
+     * @param file Файл
+     * @return Хеш данных.
+     */
+    public String put(String name, BinaryFile file) {
+        TextFile reference = referenceFile(name);
+        Path path = file.getLocation().toPath();
+        try {
+            MessageDigest digest = newDigest();
+            try (InputStream input = Files.newInputStream(path)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = input.read(buffer)) != -1) digest.update(buffer, 0, read);
+            }
+            String hash = toHex(digest.digest());
+            if (linkExisting(name, reference, hash)) return hash;
+            try (InputStream input = Files.newInputStream(path)) {
+                return put(name, input);
+            }
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    /**
+     * Получение хеша данных, на которые указывает имя.
+     *
+     * @param name Имя
+     * @return Хеш данных или null, если имени нет в хранилище.
+     */
+    public @Nullable String resolve(String name) {
+        TextFile reference = referenceFile(name);
+        return reference.exists() ? reference.readOrNull() : null;
+    }
+
+    /**
+     * Получение файла с данными, на которые указывает имя. Файл не следует изменять.
+     *
+     * @param name Имя
+     * @return Файл с данными или null, если имени нет в хранилище.
+     */
+    public @Nullable BinaryFile get(String name) {
+        String hash = resolve(name);
+        return hash == null ? null : getBlob(hash);
+    }
+
+    /**
+     * Создание ещё одного имени для уже сохранённых данных.
+     *
+     * @param name Имя
+     * @param hash Хеш данных
+     * @return Это же хранилище.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public BlobStore link(String name, String hash) {
+        checkHash(hash);
+        TextFile reference = referenceFile(name);
+        if (!linkExisting(name, reference, hash)) throw new IllegalArgumentException("Blob " + hash + " does not exist");
+        return this;
+    }
+
+    /**
+     * Удаление имени. Если на данные больше не указывает ни одно имя, они будут удалены.
+     *
+     * @param name Имя
+     * @return Это же хранилище.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public BlobStore unlink(String name) {
+        TextFile reference = referenceFile(name);
+        String hash;
+        try (ContentFileLock ignored = lockReference(name)) {
+            if (!reference.exists()) return this;
+            hash = reference.read();
+            reference.delete();
+            prune(reference.getLocation().toPath(), REFS);
+        }
+        decrement(hash);
+        return this;
+    }
+
+    /**
+     * Восстановление согласованности после сбоя. Счётчики ссылок пересчитываются по именам, данные без имён, лишние
+     * счётчики и оставшиеся временные файлы удаляются.
+     * Метод следует вызывать, когда хранилище не используется другими потоками и процессами.
+     *
+     * @return Это же хранилище.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public BlobStore repair() {
+        Path root = directory.getLocation().toPath();
+        Map<String, Long> counts = new HashMap<>();
+        try {
+            for (Path path : regularFiles(root.resolve(REFS))) {
+                String hash = new TextFile(path.toFile()).read().trim();
+                if (!isHash(hash)) continue;
+                if (getBlob(hash).exists()) counts.merge(hash, 1L, Long::sum);
+            }
+            for (Path path : regularFiles(root.resolve(OBJECTS))) {
+                String hash = path.getFileName().toString();
+                if (!isHash(hash)) continue;
+                try (ContentFileLock ignored = lockCount(hash)) {
+                    long count = counts.getOrDefault(hash, 0L);
+                    if (count > 0) {
+                        writeAtomically(countFile(hash).getLocation().toPath(), Long.toString(count));
+                    } else {
+                        Files.deleteIfExists(path);
+                        prune(path, OBJECTS);
+                    }
+                }
+            }
+            for (Path path : regularFiles(root.resolve(COUNTS))) {
+                String hash = path.getFileName().toString();
+                if (isHash(hash) && counts.containsKey(hash)) continue;
+                Files.deleteIfExists(path);
+                prune(path, COUNTS);
+            }
+            FileUtils.deleteDirectory(root.resolve(TEMP).toFile());
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+        return this;
+    }
+
+    /**
+     * Получение количества имён, указывающих на данные.
+     *
+     * @param hash Хеш данных
+     * @return Количество имён.
+     */
+    public long getReferenceCount(String hash) {
+        checkHash(hash);
+        TextFile count = countFile(hash);
+        try (ContentFileLock ignored = lockCount(hash)) {
+            return count.exists() ? Long.parseLong(count.read()) : 0;
+        }
+    }
+
+    /**
+     * Размещение данных по указанному расположению.
+     * Жёсткая ссылка не занимает дополнительного места, но изменение полученного файла изменит данные в хранилище,
+     * поэтому такой файл следует использовать только для чтения. Если жёсткую ссылку создать нельзя, данные копируются.
+     *
+     * @param hash     Хеш данных
+     * @param target   Файл, который будет создан или заменён
+     * @param hardLink Создавать ли жёсткую ссылку вместо копии
+     * @return Этот же файл.
+     */
+    public File materialize(String hash, File target, boolean hardLink) {
+        Path blob = getBlob(hash).getLocation().toPath();
+        Path targetPath = target.getLocation().toPath();
+        try {
+            Path parent = targetPath.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            if (hardLink) {
+                try {
+                    Files.deleteIfExists(targetPath);
+                    Files.createLink(targetPath, blob);
+                    return target;
+                } catch (IOException | UnsupportedOperationException ignored) {
+                }
+            }
+            Files.copy(blob, targetPath, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+        return target;
+    }
+
+    /**
+     * Замена хеша, на который указывает имя, и удаление ссылки на предыдущие данные.
+     * Блокировки имени и счётчика не удерживаются одновременно.
+     */
+    protected void replaceReference(String name, TextFile reference, String hash) {
+        String previous;
+        try (ContentFileLock ignored = lockReference(name)) {
+            previous = reference.exists() ? reference.read() : null;
+            writeAtomically(reference.getLocation().toPath(), hash);
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+        if (previous != null) decrement(previous);
+    }
+
+    /**
+     * Добавление ссылки на уже сохранённые данные.
+     *
+     * @return Были ли данные в хранилище. Если нет, имя не изменяется.
+     */
+    protected boolean linkExisting(String name, TextFile reference, String hash) {
+        try (ContentFileLock ignored = lockCount(hash)) {
+            if (!contains(hash)) return false;
+            increment(hash);
+        }
+        replaceReference(name, reference, hash);
+        return true;
+    }
+
+    protected void increment(String hash) {
+        TextFile count = countFile(hash);
+        long value = count.exists() ? Long.parseLong(count.read()) : 0;
+        try {
+            writeAtomically(count.getLocation().toPath(), Long.toString(value + 1));
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    protected void decrement(String hash) {
+        TextFile count = countFile(hash);
+        try (ContentFileLock ignored = lockCount(hash)) {
+            long value = count.exists() ? Long.parseLong(count.read()) - 1 : 0;
+            if (value > 0) {
+                writeAtomically(count.getLocation().toPath(), Long.toString(value));
+            } else {
+                Path blob = getBlob(hash).getLocation().toPath();
+                Files.deleteIfExists(blob);
+                prune(blob, OBJECTS);
+                Files.deleteIfExists(count.getLocation().toPath());
+                prune(count.getLocation().toPath(), COUNTS);
+            }
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    /**
+     * Атомарная замена содержимого небольшого файла. Содержимое записывается во временный файл, синхронизируется с
+     * диском и переносится на место файла, поэтому после сбоя файл содержит либо старое, либо новое содержимое.
+     * Если родительская директория была удалена как опустевшая во время переноса, она создаётся заново.
+     */
+    protected void writeAtomically(Path target, String content) throws IOException {
+        Path tempDirectory = directory.getLocation().toPath().resolve(TEMP);
+        Files.createDirectories(tempDirectory);
+        Path temp = tempDirectory.resolve(UUID.randomUUID().toString());
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ByteBuffer bytes = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+                while (bytes.hasRemaining()) channel.write(bytes);
+                channel.force(true);
+            }
+            for (int attempt = 0; ; attempt++) {
+                Files.createDirectories(target.getParent());
+                try {
+                    replace(temp, target);
+                    return;
+                } catch (NoSuchFileException exception) {
+                    if (attempt == MAX_MOVE_ATTEMPTS) throw exception;
+                }
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Удаление опустевших директорий от родителя файла вверх до корня раздела хранилища.
+     */
+    protected void prune(Path file, String section) {
+        Path root = directory.getLocation().toPath().toAbsolutePath().normalize().resolve(section);
+        for (Path parent = file.toAbsolutePath().normalize().getParent(); parent != null && parent.startsWith(root) && !parent.equals(root); parent = parent.getParent()) {
+            try {
+                Files.delete(parent);
+            } catch (IOException exception) {
+                return;
+            }
+        }
+    }
+
+    protected static boolean isHash(String hash) {
+        try {
+            checkHash(hash);
+            return true;
+        } catch (IllegalArgumentException exception) {
+            return false;
+        }
+    }
+
+    protected static List<Path> regularFiles(Path root) throws IOException {
+        if (!Files.isDirectory(root)) return List.of();
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+    }
+
+    protected Path writeTemp(InputStream input, MessageDigest digest) throws IOException {
+        Path tempDirectory = directory.getLocation().toPath().resolve(TEMP);
+        Files.createDirectories(tempDirectory);
+        Path temp = tempDirectory.resolve(UUID.randomUUID().toString());
+        try (OutputStream output = Files.newOutputStream(temp)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                output.write(buffer, 0, read);
+            }
+        } catch (IOException exception) {
+            Files.deleteIfExists(temp);
+            throw exception;
+        }
+        return temp;
+    }
+
+    protected static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException exception) {
+            Files.move(source, target);
+        }
+    }
+
+    protected static void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException exception) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    protected static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    protected static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = Character.forDigit((bytes[i] >> 4) & 0xF, 16);
+            hex[2 * i + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+        }
+        return new String(hex);
+    }
+}
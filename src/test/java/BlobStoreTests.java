@@ -0,0 +1,101 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vladislav117.fsmanagement.directory.Directory;
+import ru.vladislav117.fsmanagement.file.BinaryFile;
+import ru.vladislav117.fsmanagement.file.TextFile;
+import ru.vladislav117.fsmanagement.store.BlobStore;
+
+public final class BlobStoreTests {
+    @Test
+    public void testDeduplication() {
+        FSManagementTestUtils.checkTestDirectory();
+        Directory directory = new Directory("test/store");
+        BlobStore store = new BlobStore(directory);
+
+        String first = store.put("first.bin", new byte[]{1, 2, 3});
+        String second = store.put("nested/second.bin", new byte[]{1, 2, 3});
+
+        Assertions.assertEquals(first, second);
+        Assertions.assertEquals(2, store.getReferenceCount(first));
+        Assertions.assertArrayEquals(new byte[]{1, 2, 3}, store.get("nested/second.bin").read());
+
+        BinaryFile copy = store.materialize(first, new BinaryFile("test/store-copy.bin"), true).as(BinaryFile.class);
+
+        Assertions.assertArrayEquals(new byte[]{1, 2, 3}, copy.read());
+
+        store.unlink("first.bin");
+
+        Assertions.assertTrue(store.contains(first));
+
+        store.unlink("nested/second.bin");
+
+        Assertions.assertFalse(store.contains(first));
+        Assertions.assertEquals(0, store.getReferenceCount(first));
+        Assertions.assertTrue(directory.getEntryFiles().isEmpty());
+        Assertions.assertTrue(directory.getChildDirectory("objects").getEntryFSObjects().isEmpty());
+        Assertions.assertTrue(directory.getChildDirectory("refs").getEntryFSObjects().isEmpty());
+
+        copy.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void testDuplicatesAreNotRewritten() {
+        FSManagementTestUtils.checkTestDirectory();
+        Directory directory = new Directory("test/store-duplicates");
+        BlobStore store = new BlobStore(directory);
+        BinaryFile source = new BinaryFile("test/store-source.bin");
+        source.write(new byte[]{4, 5, 6});
+
+        String hash = store.put("a", new byte[]{4, 5, 6});
+        BinaryFile blob = store.getBlob(hash);
+        blob.getLocation().setLastModified(0);
+
+        Assertions.assertEquals(hash, store.put("b", new byte[]{4, 5, 6}));
+        Assertions.assertEquals(hash, store.put("c", source));
+        Assertions.assertEquals(0, blob.getLocation().lastModified());
+        Assertions.assertEquals(3, store.getReferenceCount(hash));
+
+        source.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void testRepair() {
+        FSManagementTestUtils.checkTestDirectory();
+        Directory directory = new Directory("test/store-repair");
+        BlobStore store = new BlobStore(directory);
+
+        String kept = store.put("kept", new byte[]{1});
+        String orphan = store.put("orphan", new byte[]{2});
+        directory.getChildFile(TextFile.class, "counts/" + kept.substring(0, 2) + "/" + kept.substring(2, 4) + "/" + kept).write("5");
+        directory.getChildFile("refs/orphan").delete();
+
+        store.repair();
+
+        Assertions.assertEquals(1, store.getReferenceCount(kept));
+        Assertions.assertFalse(store.contains(orphan));
+        Assertions.assertEquals(0, store.getReferenceCount(orphan));
+
+        directory.delete();
+    }
+
+    @Test
+    public void testLockFilesAreBounded() {
+        FSManagementTestUtils.checkTestDirectory();
+        Directory directory = new Directory("test/store-locks");
+        BlobStore store = new BlobStore(directory);
+
+        for (int i = 0; i < 5; i++) {
+            store.put("n" + i, new byte[]{(byte) i});
+            store.unlink("n" + i);
+        }
+
+        Assertions.assertTrue(directory.getChildDirectory("counts").getEntryFiles().isEmpty());
+        Assertions.assertTrue(directory.getChildDirectory("refs").getEntryFiles().isEmpty());
+        Assertions.assertTrue(directory.getChildDirectory("locks").getLocation().list().length <= 10);
+        Assertions.assertTrue(directory.getEntryFiles(file -> file.getName().startsWith(Directory.INTERNAL_PREFIX)).isEmpty());
+
+        directory.delete();
+    }
+}
@@ -1,6 +1,24 @@
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Test;
+import ru.vladislav117.fsmanagement.FSObject;
 import ru.vladislav117.fsmanagement.directory.Directory;
+import ru.vladislav117.fsmanagement.directory.DirectoryCursor;
+import ru.vladislav117.fsmanagement.directory.DirectoryPage;
+import ru.vladislav117.fsmanagement.directory.DirectoryPrefetcher;
+import ru.vladislav117.fsmanagement.directory.DirectorySortOrder;
+import ru.vladislav117.fsmanagement.directory.DirectoryTransaction;
+import ru.vladislav117.fsmanagement.directory.DirectoryUsage;
+import ru.vladislav117.fsmanagement.directory.PrefetchedFile;
+import ru.vladislav117.fsmanagement.file.BinaryFile;
+import ru.vladislav117.fsmanagement.file.TextFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public final class DirectoryTests {
     @Test
@@ -24,4 +42,272 @@ public final class DirectoryTests {
         Assertions.assertFalse(directory.exists());
         Assertions.assertFalse(childDirectory.exists());
     }
+
+    @Test
+    public void testDirectoryUsage() {
+        FSManagementTestUtils.checkTestDirectory();
+        Directory directory = new Directory("test/usage");
+        directory.getChildFile(BinaryFile.class, "root.bin").write(new byte[1]);
+        directory.getChildFile(BinaryFile.class, "small/a.bin").write(new byte[10]);
+        directory.getChildFile(BinaryFile.class, "large/a.bin").write(new byte[100]);
+        directory.getChildFile(BinaryFile.class, "large/inner/b.bin").write(new byte[1000]);
+
+        for (boolean parallel : new boolean[]{false, true}) {
+            DirectoryUsage usage = directory.usage(1, 1, parallel);
+
+            Assertions.assertEquals(1111, usage.getTotalSize());
+            Assertions.assertEquals(4, usage.getFileCount());
+            Assertions.assertEquals(3, usage.getDirectoryCount());
+            Assertions.assertEquals(1, usage.getLargestDirectories().size());
+            Assertions.assertEquals("large", usage.getLargestDirectories().get(0).getDirectory().getName());
+            Assertions.assertEquals(1100, usage.getLargestDirectories().get(0).getSize());
+        }
+
+        directory.delete();
+    }
+
+    @Test
+    public void testDirectoryTransaction() {
+        FSManagementTestUtils.checkTestDirectory();
+        Directory directory = new Directory("test/transaction");
+        TextFile manifest = directory.getChildFile(TextFile.class, "manifest.txt");
+        BinaryFile data = directory.getChildFile(BinaryFile.class, "data/data.bin");
+        manifest.write("1");
+
+        try (DirectoryTransaction transaction = directory.transaction()) {
+            transaction.write(manifest, "2").write(data, new byte[]{2});
+
+            Assertions.assertEquals("1", manifest.read());
+            Assertions.assertFalse(data.exists());
+            Assertions.assertEquals(1, directory.getEntryFSObjects().size());
+            Assertions.assertEquals(1, directory.usage().getFileCount());
+            Assertions.assertEquals(1, directory.getPage(DirectorySortOrder.NAME, 10).getEntries().size());
+
+            transaction.commit();
+        }
+
+        Assertions.assertEquals("2", manifest.read());
+        Assertions.assertArrayEquals(new byte[]{2}, data.read());
+
+        try (DirectoryTransaction transaction = directory.transaction()) {
+            transaction.write(manifest, "3");
+        }
+
+        Assertions.assertEquals("2", manifest.read());
+        Assertions.assertEquals(2, directory.getEntryFSObjectsAtTopLevel().size());
+
+        directory.delete();
+    }
+
+    @Test
+    public void testDirectoryTransactionRecovery() {
+        FSManagementTestUtils.checkTestDirectory();
+        Directory directory = new Directory("test/transaction-recovery");
+        TextFile first = directory.getChildFile(TextFile.class, "a.txt");
+        TextFile second = directory.getChildFile(TextFile.class, "sub/b.txt");
+        TextFile blocker = directory.getChildFile(TextFile.class, "sub");
+        blocker.write("not a directory");
+
+        DirectoryTransaction transaction = directory.transaction();
+        transaction.write(first, "a").write(second, "b");
+
+        Assertions.assertThrows(RuntimeException.class, transaction::commit);
+        Assertions.assertEquals("a", first.read());
+        Assertions.assertEquals(2, directory.getEntryFSObjectsAtTopLevel().size());
+        Assertions.assertEquals(1, internalEntries(directory));
+
+        blocker.delete();
+        directory.recoverTransactions();
+
+        Assertions.assertEquals("b", second.read());
+        Assertions.assertEquals(2, directory.getEntryFSObjectsAtTopLevel().size());
+        Assertions.assertEquals(0, internalEntries(directory));
+
+        directory.delete();
+    }
+
+    @Test
+    public void testDirectoryTransactionSpecialNames() {
+        FSManagementTestUtils.checkTestDirectory();
+        Directory directory = new Directory("test/transaction-names");
+        TextFile tab = directory.getChildFile(TextFile.class, "a\tb.txt");
+        TextFile newline = directory.getChildFile(TextFile.class, "c\nd\\e.txt");
+        try {
+            tab.write("");
+            newline.write("");
+        } catch (RuntimeException exception) {
+            directory.delete();
+            Assumptions.abort("File names with control characters are not supported");
+        }
+
+        try (DirectoryTransaction transaction = directory.transaction()) {
+            transaction.write(tab, "tab").write(newline, "newline").commit();
+        }
+
+        Assertions.assertEquals("tab", tab.read());
+        Assertions.assertEquals("newline", newline.read());
+        Assertions.assertEquals(2, directory.getEntryFSObjectsAtTopLevel().size());
+        Assertions.assertEquals(0, internalEntries(directory));
+
+        directory.delete();
+    }
+
+    @Test
+    public void testDirectoryArchive() {
+        FSManagementTestUtils.checkTestDirectory();
+        Directory source = new Directory("test/archive-source");
+        Directory target = new Directory("test/archive-target");
+        BinaryFile archive = new BinaryFile("test/archive.zip");
+        source.getChildFile(TextFile.class, "a.txt").write("a");
+        source.getChildFile(BinaryFile.class, "nested/b.bin").write(new byte[2 * 1024 * 1024]);
+        source.getChildDirectory("empty").create();
+
+        source.packTo(archive);
+        target.unpackFrom(archive);
+
+        Assertions.assertEquals("a", target.getChildFile(TextFile.class, "a.txt").read());
+        Assertions.assertEquals(2 * 1024 * 1024, target.getChildFile(BinaryFile.class, "nested/b.bin").read().length);
+        Assertions.assertTrue(target.getChildDirectory("empty").exists());
+
+        archive.delete();
+        source.delete();
+        target.delete();
+    }
+
+    @Test
+    public void testDirectoryArchiveSafety() {
+        FSManagementTestUtils.checkTestDirectory();
+        Directory source = new Directory("test/archive-safety-source");
+        Directory outside = new Directory("test/archive-safety-outside");
+        Directory target = new Directory("test/archive-safety-target");
+        BinaryFile archive = new BinaryFile("test/archive-safety.zip");
+        source.getChildFile(TextFile.class, "link/escaped.txt").write("escaped");
+        source.packTo(archive);
+        long length = archive.getLocation().length();
+
+        Assertions.assertThrows(RuntimeException.class, () -> source.packTo(archive, 42));
+        Assertions.assertEquals(length, archive.getLocation().length());
+        Assertions.assertTrue(Arrays.stream(new Directory("test").getLocation().list()).noneMatch(name -> name.startsWith(Directory.INTERNAL_PREFIX + "archive-")));
+
+        outside.create();
+        target.create();
+        try {
+            Files.createSymbolicLink(target.getChildDirectory("link").getLocation().toPath(), outside.getLocation().toPath().toAbsolutePath());
+        } catch (IOException | UnsupportedOperationException exception) {
+            archive.delete();
+            source.delete();
+            outside.delete();
+            target.delete();
+            Assumptions.abort("Symbolic links are not supported");
+        }
+
+        Assertions.assertThrows(RuntimeException.class, () -> target.unpackFrom(archive));
+        Assertions.assertFalse(outside.getChildFile("escaped.txt").exists());
+
+        archive.delete();
+        source.delete();
+        outside.delete();
+        target.delete();
+    }
+
+    @Test
+    public void testDirectoryArchiveSkipsSymbolicLinks() {
+        FSManagementTestUtils.checkTestDirectory();
+        Directory source = new Directory("test/archive-links-source");
+        Directory outside = new Directory("test/archive-links-outside");
+        Directory target = new Directory("test/archive-links-target");
+        BinaryFile archive = new BinaryFile("test/archive-links.zip");
+        source.getChildFile(TextFile.class, "a.txt").write("a");
+        outside.getChildFile(TextFile.class, "secret.txt").write("secret");
+        try {
+            Files.createSymbolicLink(source.getChildDirectory("linked").getLocation().toPath(), outside.getLocation().toPath().toAbsolutePath());
+            Files.createSymbolicLink(source.getChildFile(TextFile.class, "linked.txt").getLocation().toPath(), Path.of("a.txt"));
+        } catch (IOException | UnsupportedOperationException exception) {
+            source.delete();
+            outside.delete();
+            Assumptions.abort("Symbolic links are not supported");
+        }
+
+        source.packTo(archive);
+        target.unpackFrom(archive);
+
+        Assertions.assertEquals("a", target.getChildFile(TextFile.class, "a.txt").read());
+        Assertions.assertFalse(target.getChildDirectory("linked").exists());
+        Assertions.assertFalse(target.getChildFile(TextFile.class, "linked.txt").exists());
+
+        archive.delete();
+        source.delete();
+        outside.delete();
+        target.delete();
+    }
+
+    @Test
+    public void testDirectoryPages() {
+        FSManagementTestUtils.checkTestDirectory();
+        Directory directory = new Directory("test/pages");
+        for (int i = 0; i < 25; i++) directory.getChildFile(TextFile.class, String.format("%02d.txt", 24 - i)).write("");
+
+        List<String> names = new ArrayList<>();
+        DirectoryCursor cursor = null;
+        int pages = 0;
+        do {
+            DirectoryPage page = directory.getPage(DirectorySortOrder.NAME, 10, cursor);
+            for (FSObject entry : page.getEntries()) names.add(entry.getName());
+            cursor = page.getNextCursor() == null ? null : DirectoryCursor.parse(page.getNextCursor().toString());
+            pages++;
+        } while (cursor != null);
+
+        Assertions.assertEquals(3, pages);
+        Assertions.assertEquals(25, names.size());
+        for (int i = 0; i < 25; i++) Assertions.assertEquals(String.format("%02d.txt", i), names.get(i));
+
+        directory.delete();
+    }
+
+    @Test
+    public void testSymbolicLinkCycle() {
+        FSManagementTestUtils.checkTestDirectory();
+        Directory directory = new Directory("test/cycle");
+        directory.getChildFile(TextFile.class, "child/file.txt").write("");
+        Path link = directory.getChildDirectory("child/loop").getLocation().toPath();
+        try {
+            Files.createSymbolicLink(link, directory.getLocation().toPath().toAbsolutePath());
+        } catch (IOException | UnsupportedOperationException exception) {
+            directory.delete();
+            Assumptions.abort("Symbolic links are not supported");
+        }
+
+        Assertions.assertEquals(2, directory.getEntryFSObjects().size());
+        Assertions.assertEquals(2, directory.traverse().setFollowLinks(false).collect().size());
+
+        directory.delete();
+    }
+
+    @Test
+    public void testDirectoryPrefetch() {
+        FSManagementTestUtils.checkTestDirectory();
+        Directory directory = new Directory("test/prefetch");
+        for (int i = 0; i < 30; i++) directory.getChildFile(TextFile.class, (i % 3) + "/" + i + ".txt").write(Integer.toString(i));
+
+        int count = 0;
+        try (DirectoryPrefetcher<TextFile, String> prefetcher = directory.prefetch(TextFile.class, 4, 16)) {
+            while (prefetcher.hasNext()) {
+                PrefetchedFile<TextFile, String> prefetched = prefetcher.next();
+
+                Assertions.assertEquals(prefetched.getFile().getNameWithoutExtension(), prefetched.getContent());
+
+                count++;
+            }
+        }
+
+        Assertions.assertEquals(30, count);
+
+        directory.delete();
+    }
+
+    private static long internalEntries(Directory directory) {
+        String[] names = directory.getLocation().list();
+        if (names == null) return 0;
+        return Arrays.stream(names).filter(name -> name.startsWith(Directory.INTERNAL_PREFIX)).count();
+    }
 }
@@ -1,8 +1,29 @@
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import ru.vladislav117.fsmanagement.FSObject;
+import ru.vladislav117.fsmanagement.buffer.ByteBufferPool;
+import ru.vladislav117.fsmanagement.directory.Directory;
+import ru.vladislav117.fsmanagement.directory.DirectoryTransaction;
 import ru.vladislav117.fsmanagement.file.BinaryFile;
+import ru.vladislav117.fsmanagement.file.BinaryFileChannel;
+import ru.vladislav117.fsmanagement.file.ContentFileLock;
 import ru.vladislav117.fsmanagement.file.File;
+import ru.vladislav117.fsmanagement.file.FileChunk;
 import ru.vladislav117.fsmanagement.file.TextFile;
+import ru.vladislav117.fsmanagement.file.TextFileChunk;
+import ru.vladislav117.fsmanagement.file.TextFileFollower;
+import ru.vladislav117.fsmanagement.file.WriteBehind;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
 
 public final class FileTests {
     @Test
@@ -44,4 +65,362 @@ public final class FileTests {
 
         Assertions.assertFalse(file.exists());
     }
+
+    @Test
+    public void testBinaryFilePositionalAccess() {
+        FSManagementTestUtils.checkTestDirectory();
+        BinaryFile file = new BinaryFile("test/positional.bin");
+        file.write(new byte[]{0, 1, 2, 3, 4, 5});
+
+        file.writeAt(2, new byte[]{9, 9});
+
+        Assertions.assertArrayEquals(new byte[]{0, 1, 9, 9, 4, 5}, file.read());
+        Assertions.assertArrayEquals(new byte[]{4, 5}, file.readAt(4, 10));
+        Assertions.assertEquals(6, file.size());
+
+        file.truncate(3);
+
+        Assertions.assertArrayEquals(new byte[]{0, 1, 9}, file.read());
+
+        byte[] record = new byte[BinaryFileChannel.BUFFER_SIZE + 10];
+        for (int i = 0; i < record.length; i++) record[i] = (byte) i;
+        try (BinaryFileChannel channel = file.open()) {
+            channel.writeAt(3, record).writeAt(0, new byte[]{7});
+            byte[] read = new byte[record.length];
+
+            Assertions.assertEquals(record.length, channel.readAt(3, read, 0, read.length));
+            Assertions.assertArrayEquals(record, read);
+            Assertions.assertEquals(-1, channel.readAt(channel.size(), read, 0, 1));
+
+            channel.truncate(2);
+        }
+
+        Assertions.assertArrayEquals(new byte[]{7, 1}, file.read());
+
+        try (WriteBehind writeBehind = new WriteBehind(60000)) {
+            file.setWriteBehind(writeBehind);
+            file.write(new byte[]{1, 2, 3, 4});
+            file.writeAt(1, new byte[]{5});
+            file.truncate(3);
+        }
+        file.setWriteBehind(null);
+
+        Assertions.assertArrayEquals(new byte[]{1, 5, 3}, file.read());
+
+        file.delete();
+    }
+
+    @Test
+    public void testPooledBuffers() {
+        FSManagementTestUtils.checkTestDirectory();
+        BinaryFile file = new BinaryFile("test/pooled.bin");
+        ByteBufferPool pool = ByteBufferPool.getDefault();
+
+        ByteBuffer source = pool.acquire(3);
+        source.put(new byte[]{1, 2, 3}).flip();
+        file.writeFrom(source);
+        pool.release(source);
+
+        ByteBuffer content = file.readPooled();
+
+        Assertions.assertEquals(3, content.remaining());
+        Assertions.assertEquals(3, content.get(2));
+
+        pool.release(content);
+        pool.release(content);
+        pool.release(ByteBuffer.allocateDirect(4096));
+
+        Assertions.assertSame(content, pool.acquire(3));
+        Assertions.assertNotSame(content, pool.acquire(3));
+
+        file.delete();
+    }
+
+    @Test
+    public void testTextFileCharsets() {
+        FSManagementTestUtils.checkTestDirectory();
+        TextFile file = new TextFile("test/charsets.txt");
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 50000; i++) builder.append("Привет, мир! ");
+        String text = builder.toString();
+
+        for (Charset charset : new Charset[]{StandardCharsets.UTF_8, StandardCharsets.UTF_16, Charset.forName("windows-1251")}) {
+            file.setCharset(charset).write(text);
+
+            Assertions.assertEquals(text, file.read());
+        }
+
+        file.delete();
+    }
+
+    @Test
+    public void testTextFileCharsetDetection() {
+        FSManagementTestUtils.checkTestDirectory();
+        Charset windows1251 = Charset.forName("windows-1251");
+        TextFile file = new TextFile("test/detection.txt").setCharset(windows1251).setCharsetDetection(true);
+
+        new TextFile("test/detection.txt").setCharset(StandardCharsets.UTF_16LE).write("\uFEFFПривет");
+
+        Assertions.assertEquals("Привет", file.read());
+        Assertions.assertEquals(StandardCharsets.UTF_16LE, file.getDetectedCharset());
+
+        file.write("Мир");
+
+        Assertions.assertEquals("Мир", new TextFile("test/detection.txt").setCharsetDetection(true).read());
+
+        new TextFile("test/detection.txt").setCharset(windows1251).write("Привет");
+
+        Assertions.assertEquals("Привет", file.read());
+        Assertions.assertEquals(windows1251, file.getDetectedCharset());
+
+        String text = "Header ".repeat(1000) + "\nПривет";
+        new TextFile("test/detection.txt").setCharset(windows1251).write(text);
+
+        Assertions.assertEquals(text, file.read());
+        Assertions.assertEquals(windows1251, file.getDetectedCharset());
+
+        file.delete();
+    }
+
+    @Test
+    public void testTextFileUpdate() throws InterruptedException {
+        FSManagementTestUtils.checkTestDirectory();
+        TextFile file = new TextFile("test/update.txt");
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 50; j++) {
+                    new TextFile("test/update.txt").update(content -> Integer.toString(content == null ? 1 : Integer.parseInt(content) + 1));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        Assertions.assertEquals("200", file.readLocked());
+        try (ContentFileLock ignored = file.lockShared()) {
+            Assertions.assertThrows(IllegalStateException.class, () -> file.update(content -> content));
+        }
+        Assertions.assertEquals("201", file.update(content -> Integer.toString(Integer.parseInt(content) + 1)));
+        Assertions.assertEquals(1, new Directory("test").getEntryFSObjectsAtTopLevel(object -> object.getName().contains("update.txt")).size());
+
+        file.delete();
+        new File("test/.fsm-lock-update.txt").delete();
+    }
+
+    @Test
+    public void testTextFileFollow() {
+        FSManagementTestUtils.checkTestDirectory();
+        TextFile file = new TextFile("test/follow.txt");
+        file.write("old\n");
+
+        try (TextFileFollower follower = file.follow()) {
+            Assertions.assertEquals(List.of(), follower.poll());
+
+            file.write("old\nfirst\nsec");
+
+            Assertions.assertEquals(List.of("first"), follower.poll());
+
+            file.write("old\nfirst\nsecond\n");
+
+            Assertions.assertEquals(List.of("second"), follower.poll());
+
+            file.write("truncated\n");
+
+            Assertions.assertEquals(List.of("truncated"), follower.poll());
+        }
+
+        file.delete();
+    }
+
+    @Test
+    public void testBatchExistence() {
+        FSManagementTestUtils.checkTestDirectory();
+        List<TextFile> files = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            TextFile file = new TextFile("test/batch/" + i + ".txt");
+            if (i % 2 == 0) file.write("");
+            files.add(file);
+        }
+
+        boolean[] exists = FSObject.existsEach(files);
+
+        for (int i = 0; i < 40; i++) Assertions.assertEquals(i % 2 == 0, exists[i]);
+        Assertions.assertFalse(FSObject.existsAll(files));
+        Assertions.assertNull(FSObject.stat(files).get(1));
+        Assertions.assertEquals(0, FSObject.stat(files).get(0).size());
+
+        TextFile link = new TextFile("test/batch/link.txt");
+        try {
+            Files.createSymbolicLink(link.getLocation().toPath(), Path.of("missing.txt"));
+            files.add(link);
+
+            Assertions.assertFalse(FSObject.existsEach(files)[40]);
+        } catch (IOException | UnsupportedOperationException ignored) {
+        }
+
+        new Directory("test/batch").delete();
+    }
+
+    @Test
+    public void testBatchExistenceWithWriteBehind() {
+        FSManagementTestUtils.checkTestDirectory();
+        List<TextFile> files = new ArrayList<>();
+        try (WriteBehind writeBehind = new WriteBehind(60000)) {
+            for (int i = 0; i < 40; i++) {
+                TextFile file = new TextFile("test/batch-pending/" + i + ".txt");
+                if (i % 2 == 0) file.write("");
+                else if (i % 4 == 1) file.setWriteBehind(writeBehind).write("Ожидает записи");
+                files.add(file);
+            }
+
+            boolean[] exists = FSObject.existsEach(files);
+
+            for (int i = 0; i < 40; i++) {
+                Assertions.assertEquals(files.get(i).exists(), exists[i]);
+                Assertions.assertEquals(i % 4 != 3, exists[i]);
+            }
+            Assertions.assertFalse(FSObject.existsAll(files));
+            Assertions.assertTrue(FSObject.existsAll(files.subList(0, 2)));
+        }
+
+        new Directory("test/batch-pending").delete();
+    }
+
+    @Test
+    public void testChunks() {
+        FSManagementTestUtils.checkTestDirectory();
+        byte[] bytes = new byte[10000];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) i;
+        BinaryFile binaryFile = new BinaryFile("test/chunks.bin");
+        binaryFile.write(bytes);
+
+        List<FileChunk> chunks = binaryFile.chunks(4096).collect(Collectors.toList());
+
+        Assertions.assertEquals(3, chunks.size());
+        Assertions.assertEquals(8192, chunks.get(2).getPosition());
+        Assertions.assertEquals(10000 - 8192, chunks.get(2).getLength());
+        Assertions.assertEquals(bytes[8192], chunks.get(2).read()[0]);
+        Assertions.assertEquals(bytes[4096], chunks.get(1).map().get(0));
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) builder.append("Строка ").append(i).append('\n');
+        for (Charset charset : new Charset[]{StandardCharsets.UTF_8, StandardCharsets.UTF_16}) {
+            TextFile textFile = new TextFile("test/chunks.txt").setCharset(charset);
+            textFile.write(builder.toString());
+
+            Assertions.assertTrue(textFile.chunks(1000).count() > 1);
+            Assertions.assertEquals(builder.toString().lines().collect(Collectors.toList()), textFile.chunks(1000).flatMap(TextFileChunk::lines).collect(Collectors.toList()));
+
+            textFile.delete();
+        }
+
+        binaryFile.delete();
+    }
+
+    @Test
+    public void testChunksWithBom() {
+        FSManagementTestUtils.checkTestDirectory();
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) builder.append("Строка ").append(i).append('\n');
+        List<String> lines = builder.toString().lines().collect(Collectors.toList());
+        Charset[] encodings = {StandardCharsets.UTF_8, StandardCharsets.UTF_16LE, StandardCharsets.UTF_16BE, Charset.forName("UTF-32LE")};
+        Charset[] charsets = {StandardCharsets.UTF_8, StandardCharsets.UTF_16, StandardCharsets.UTF_16, Charset.forName("UTF-32")};
+        for (int i = 0; i < encodings.length; i++) {
+            BinaryFile binaryFile = new BinaryFile("test/chunks-bom.txt");
+            binaryFile.write(("\uFEFF" + builder).getBytes(encodings[i]));
+            TextFile textFile = new TextFile("test/chunks-bom.txt").setCharset(charsets[i]);
+
+            Assertions.assertTrue(textFile.chunks(1000).count() > 1);
+            Assertions.assertEquals(lines, textFile.chunks(1000).flatMap(TextFileChunk::lines).collect(Collectors.toList()));
+            Assertions.assertEquals(encodings[i], textFile.chunks(1000).findFirst().orElseThrow().getCharset());
+
+            textFile.setCharset(StandardCharsets.ISO_8859_1).setCharsetDetection(true).read();
+            Assertions.assertEquals(lines, textFile.chunks(1000).flatMap(TextFileChunk::lines).collect(Collectors.toList()));
+
+            textFile.delete();
+        }
+    }
+
+    @Test
+    public void testWriteBehind() {
+        FSManagementTestUtils.checkTestDirectory();
+        TextFile file = new TextFile("test/write-behind.txt");
+        TextFile reader = new TextFile("test/write-behind.txt");
+
+        try (WriteBehind writeBehind = new WriteBehind(60000)) {
+            file.setWriteBehind(writeBehind);
+            for (int i = 0; i < 100; i++) file.write("Версия " + i);
+
+            Assertions.assertEquals("Версия 99", file.read());
+            Assertions.assertFalse(reader.exists());
+            Assertions.assertEquals(1, writeBehind.getPendingCount());
+
+            file.flush();
+
+            Assertions.assertEquals("Версия 99", reader.read());
+            Assertions.assertEquals(0, writeBehind.getPendingCount());
+
+            file.write("Последняя версия");
+        }
+
+        Assertions.assertEquals("Последняя версия", reader.read());
+
+        file.delete();
+    }
+
+    @Test
+    public void testWriteBehindIsolation() {
+        FSManagementTestUtils.checkTestDirectory();
+        Directory directory = new Directory("test/write-behind");
+        BinaryFile file = directory.getChildFile(BinaryFile.class, "data.bin");
+        TextFile text = directory.getChildFile(TextFile.class, "text.txt");
+
+        try (WriteBehind writeBehind = new WriteBehind(60000)) {
+            file.setWriteBehind(writeBehind);
+            text.setWriteBehind(writeBehind);
+            byte[] bytes = {1, 2, 3};
+            file.write(bytes);
+            bytes[0] = 9;
+            file.read()[1] = 9;
+
+            Assertions.assertArrayEquals(new byte[]{1, 2, 3}, file.read());
+
+            text.write("Отложенная");
+            try (DirectoryTransaction transaction = directory.transaction()) {
+                transaction.write(new TextFile(text.getLocation()), "Зафиксированная");
+                transaction.commit();
+            }
+
+            Assertions.assertEquals("Зафиксированная", text.read());
+        }
+
+        Assertions.assertArrayEquals(new byte[]{1, 2, 3}, file.read());
+        Assertions.assertEquals("Зафиксированная", text.read());
+
+        directory.delete();
+    }
+
+    @Test
+    public void testWriteBehindSharedResources() {
+        FSManagementTestUtils.checkTestDirectory();
+        TextFile file = new TextFile("test/write-behind-shared.txt");
+        List<WeakReference<WriteBehind>> references = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            WriteBehind writeBehind = new WriteBehind(60000);
+            file.setWriteBehind(writeBehind).write("Версия " + i);
+            file.setWriteBehind(null);
+            references.add(new WeakReference<>(writeBehind));
+        }
+
+        Assertions.assertEquals("Версия 9", file.read());
+        long threads = Thread.getAllStackTraces().keySet().stream().filter(thread -> thread.getName().equals("fsmanagement-write-behind")).count();
+        Assertions.assertEquals(1, threads);
+        for (int attempt = 0; attempt < 50 && references.stream().anyMatch(reference -> reference.get() != null); attempt++) System.gc();
+        Assertions.assertTrue(references.stream().allMatch(reference -> reference.get() == null));
+
+        file.delete();
+    }
 }
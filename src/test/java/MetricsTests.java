@@ -0,0 +1,34 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vladislav117.fsmanagement.directory.Directory;
+import ru.vladislav117.fsmanagement.file.BinaryFile;
+import ru.vladislav117.fsmanagement.metrics.FSMetrics;
+import ru.vladislav117.fsmanagement.metrics.MemoryFSListener;
+
+public final class MetricsTests {
+    @Test
+    public void testMemoryListener() {
+        FSManagementTestUtils.checkTestDirectory();
+        MemoryFSListener listener = new MemoryFSListener();
+        FSMetrics.setListener(listener);
+        try {
+            Directory directory = new Directory("test/metrics");
+            BinaryFile file = directory.getChildFile(BinaryFile.class, "data.bin");
+            file.write(new byte[]{1, 2, 3, 4});
+            file.read();
+            directory.getEntryFiles();
+            directory.delete();
+            file.delete();
+
+            Assertions.assertEquals(4, listener.getBytesWritten());
+            Assertions.assertEquals(4, listener.getBytesRead());
+            Assertions.assertEquals(1, listener.getEntriesListed());
+            Assertions.assertEquals(2, listener.getDeletes());
+            Assertions.assertEquals(0, listener.getSuppressedErrors());
+            Assertions.assertEquals(1, listener.getReadLatency().getCount());
+            Assertions.assertFalse(directory.exists());
+        } finally {
+            FSMetrics.setListener(null);
+        }
+    }
+}
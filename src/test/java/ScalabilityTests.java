@@ -0,0 +1,275 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import ru.vladislav117.fsmanagement.FSObject;
+import ru.vladislav117.fsmanagement.buffer.ByteBufferPool;
+import ru.vladislav117.fsmanagement.directory.Directory;
+import ru.vladislav117.fsmanagement.directory.DirectoryCursor;
+import ru.vladislav117.fsmanagement.directory.DirectoryPage;
+import ru.vladislav117.fsmanagement.directory.DirectorySortOrder;
+import ru.vladislav117.fsmanagement.file.BinaryFile;
+import ru.vladislav117.fsmanagement.file.TextFile;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Проверки масштабируемости на синтетических деревьях.
+ * Проверки зависят от скорости диска, поэтому не входят в задачу test и выполняются задачей scalabilityTest на
+ * 10^5 элементах. Размер задаётся свойством fsmanagement.scale, например
+ * {@code ./gradlew scalabilityTest -Dfsmanagement.scale=1000000}. При запуске без свойства, например из среды
+ * разработки, деревья содержат около 8000 элементов.
+ * Линейность проверяется сравнением затрат на элемент у двух деревьев, различающихся по размеру в 4 раза.
+ */
+@Tag("scalability")
+public final class ScalabilityTests {
+    private static final int DEFAULT_SCALE = 8000;
+    private static final int TIMING_RUNS = 3;
+    private static final long LISTING_NANOS_PER_ENTRY = TimeUnit.MICROSECONDS.toNanos(20);
+    private static final long DELETION_NANOS_PER_ENTRY = TimeUnit.MICROSECONDS.toNanos(150);
+    private static final long RETAINED_BYTES_PER_ENTRY = 256;
+    private static final double TIME_GROWTH = 2;
+    private static final double MEMORY_GROWTH = 1.5;
+    private static final int MAX_PATH_LENGTH = 4000;
+    private static final int MIN_DEEP_TREE_DEPTH = 1000;
+    private static final long DEEP_TREE_STACK_SIZE = 256 * 1024;
+
+    /**
+     * Дерево с ветвлением 4 на один уровень глубже содержит примерно в 4 раза больше элементов. При линейной
+     * сложности затраты на элемент не должны заметно расти вместе с размером дерева.
+     */
+    @Test
+    public void testTreeListingAndDeletion() {
+        int depth = depthFor(SyntheticTree.scale(DEFAULT_SCALE), 4, 16);
+        measureTree(Math.max(0, depth - 1));
+        TreeMeasurement small = measureTree(Math.max(0, depth - 1));
+        TreeMeasurement large = measureTree(depth);
+
+        Assertions.assertTrue(large.listingNanosPerEntry() < LISTING_NANOS_PER_ENTRY, "Listing took " + large.listingNanosPerEntry() + " ns per entry");
+        Assertions.assertTrue(large.retainedBytesPerEntry() < RETAINED_BYTES_PER_ENTRY, "Listing retained " + large.retainedBytesPerEntry() + " bytes per entry");
+        Assertions.assertTrue(large.deletionNanosPerEntry() < DELETION_NANOS_PER_ENTRY, "Deletion took " + large.deletionNanosPerEntry() + " ns per entry");
+        if (large.entries() < 2 * small.entries()) return;
+        Assertions.assertTrue(large.listingNanosPerEntry() < small.listingNanosPerEntry() * TIME_GROWTH,
+                "Listing time per entry grew from " + small.listingNanosPerEntry() + " to " + large.listingNanosPerEntry() + " ns");
+        Assertions.assertTrue(large.retainedBytesPerEntry() < small.retainedBytesPerEntry() * MEMORY_GROWTH,
+                "Retained memory per entry grew from " + small.retainedBytesPerEntry() + " to " + large.retainedBytesPerEntry() + " bytes");
+        Assertions.assertTrue(large.deletionNanosPerEntry() < small.deletionNanosPerEntry() * TIME_GROWTH,
+                "Deletion time per entry grew from " + small.deletionNanosPerEntry() + " to " + large.deletionNanosPerEntry() + " ns");
+    }
+
+    /**
+     * Цепочка директорий с короткими именами, настолько длинная, насколько позволяет длина пути.
+     * Обход выполняется в потоке с маленьким стеком, на котором рекурсивный обход переполняет стек.
+     */
+    @Test
+    public void testDeepTree() throws InterruptedException {
+        Directory root = SyntheticTree.createTempRoot();
+        int depth = (MAX_PATH_LENGTH - root.getLocation().getAbsolutePath().length()) / 2 - 2;
+        if (depth < MIN_DEEP_TREE_DEPTH) {
+            root.delete();
+            Assumptions.abort("Temporary directory path is too long");
+        }
+        SyntheticTree.Result tree = new SyntheticTree()
+                .setFanOut(1)
+                .setDepth(depth)
+                .setFilesPerDirectory(1)
+                .setFileSize(0, 0)
+                .setShortNames(true)
+                .generate(root);
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(null, () -> {
+            try {
+                Assertions.assertEquals(tree.entries(), root.getEntryFSObjects().size());
+                Assertions.assertEquals(tree.files, root.usage().getFileCount());
+                root.delete();
+                Assertions.assertFalse(root.exists());
+            } catch (Throwable throwable) {
+                failure.set(throwable);
+            }
+        }, "deep-tree", DEEP_TREE_STACK_SIZE);
+        thread.start();
+        thread.join();
+        if (failure.get() != null) {
+            root.delete();
+            Assertions.fail("Deep tree of " + tree.directories + " directories failed", failure.get());
+        }
+    }
+
+    @Test
+    public void testSymbolicLinkCycles() {
+        int scale = SyntheticTree.scale(DEFAULT_SCALE);
+        Directory root = SyntheticTree.createTempRoot();
+        SyntheticTree.Result tree = new SyntheticTree()
+                .setFanOut(4)
+                .setDepth(depthFor(scale, 4, 8))
+                .setFilesPerDirectory(8)
+                .setSymlinkRatio(0.25)
+                .generate(root);
+        if (tree.symlinks == 0) {
+            root.delete();
+            Assumptions.abort("Symbolic links are not supported");
+        }
+
+        long files = 0;
+        for (FSObject entry : root.traverse()) {
+            if (entry.isFile()) files++;
+        }
+        Assertions.assertEquals(tree.files, files);
+        root.delete();
+        Assertions.assertFalse(root.exists());
+    }
+
+    @Test
+    public void testFlatDirectoryPages() {
+        int scale = SyntheticTree.scale(DEFAULT_SCALE);
+        Directory root = SyntheticTree.createTempRoot();
+        SyntheticTree.Result tree = new SyntheticTree()
+                .setDepth(0)
+                .setFilesPerDirectory(scale)
+                .setFileSize(0, 0)
+                .generate(root);
+
+        long usedHeap = usedHeap();
+        DirectoryPage page = root.getPage(DirectorySortOrder.NAME, 100);
+        long retainedBytes = usedHeap() - usedHeap;
+        Assertions.assertTrue(retainedBytes < 100 * RETAINED_BYTES_PER_ENTRY, "Page retained " + retainedBytes + " bytes");
+
+        long entries = page.getEntries().size();
+        DirectoryCursor cursor = page.getNextCursor();
+        while (cursor != null) {
+            page = root.getPage(DirectorySortOrder.NAME, 100, cursor);
+            entries += page.getEntries().size();
+            cursor = page.getNextCursor();
+        }
+        Assertions.assertEquals(tree.files, entries);
+        root.delete();
+    }
+
+    @Test
+    public void testContentFileAllocation() {
+        com.sun.management.ThreadMXBean threads = threadBean();
+        int size = (int) Math.max(1 << 20, Math.min(SyntheticTree.scale(DEFAULT_SCALE) * 1024L, ByteBufferPool.getMaxPooledCapacity()));
+        Directory root = SyntheticTree.createTempRoot();
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) bytes[i] = (byte) ('a' + i % 26);
+        BinaryFile binaryFile = new BinaryFile(root, "file.bin");
+        binaryFile.write(bytes);
+        bytes = null;
+
+        long allocated = allocatedBytes(threads, () -> Assertions.assertEquals(size, binaryFile.read().length));
+        Assertions.assertTrue(allocated < size * 3L / 2, "BinaryFile.read allocated " + allocated + " bytes");
+
+        TextFile textFile = new TextFile(binaryFile.getLocation());
+        allocated = allocatedBytes(threads, () -> Assertions.assertEquals(size, textFile.read().length()));
+        Assertions.assertTrue(allocated < size * 5L / 2, "TextFile.read allocated " + allocated + " bytes");
+
+        ByteBufferPool.getDefault().release(binaryFile.readPooled());
+        allocated = allocatedBytes(threads, () -> {
+            for (int i = 0; i < 16; i++) {
+                ByteBuffer content = binaryFile.readPooled();
+                Assertions.assertEquals(size, content.remaining());
+                ByteBufferPool.getDefault().release(content);
+            }
+        });
+        Assertions.assertTrue(allocated < size / 4, "Pooled reads allocated " + allocated + " bytes");
+
+        ByteBuffer window = ByteBuffer.allocate(4096);
+        allocated = allocatedBytes(threads, () -> {
+            long position = 0;
+            int read;
+            while ((read = binaryFile.readAt(position, window.clear())) > 0) position += read;
+            Assertions.assertEquals(size, position);
+        });
+        Assertions.assertTrue(allocated < size / 4, "Positional reads allocated " + allocated + " bytes");
+        root.delete();
+    }
+
+    private static TreeMeasurement measureTree(int depth) {
+        Directory root = SyntheticTree.createTempRoot();
+        SyntheticTree.Result tree = new SyntheticTree()
+                .setFanOut(4)
+                .setDepth(depth)
+                .setFilesPerDirectory(16)
+                .setFileSize(0, 256)
+                .generate(root);
+
+        long listingNanos = Long.MAX_VALUE;
+        for (int i = 0; i < TIMING_RUNS; i++) {
+            long start = System.nanoTime();
+            int size = root.getEntryFSObjects().size();
+            listingNanos = Math.min(listingNanos, System.nanoTime() - start);
+            Assertions.assertEquals(tree.entries(), size);
+        }
+        long usedHeap = usedHeap();
+        ArrayList<FSObject> entries = root.getEntryFSObjects();
+        long retainedBytes = usedHeap() - usedHeap;
+        Assertions.assertEquals(tree.entries(), entries.size());
+        entries = null;
+
+        Assertions.assertEquals(tree.bytes, root.usage().getTotalSize());
+
+        long start = System.nanoTime();
+        root.delete();
+        long deletionNanos = System.nanoTime() - start;
+        Assertions.assertFalse(root.exists());
+        return new TreeMeasurement(tree.entries(), listingNanos, retainedBytes, deletionNanos);
+    }
+
+    private static int depthFor(int scale, int fanOut, int filesPerDirectory) {
+        int depth = 0;
+        long entries = filesPerDirectory;
+        long level = 1;
+        while (entries < scale) {
+            level *= fanOut;
+            entries += level * (filesPerDirectory + 1);
+            depth++;
+        }
+        return Math.max(0, depth - 1);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long usedHeap = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            usedHeap = Math.min(usedHeap, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return usedHeap;
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads)
+                || !threads.isThreadAllocatedMemorySupported()) {
+            Assumptions.abort("Thread allocation accounting is not supported");
+            throw new IllegalStateException();
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    private static long allocatedBytes(com.sun.management.ThreadMXBean threads, Runnable action) {
+        long id = Thread.currentThread().getId();
+        long start = threads.getThreadAllocatedBytes(id);
+        action.run();
+        return threads.getThreadAllocatedBytes(id) - start;
+    }
+
+    private record TreeMeasurement(long entries, long listingNanos, long retainedBytes, long deletionNanos) {
+        double listingNanosPerEntry() {
+            return (double) listingNanos / entries;
+        }
+
+        double retainedBytesPerEntry() {
+            return (double) retainedBytes / entries;
+        }
+
+        double deletionNanosPerEntry() {
+            return (double) deletionNanos / entries;
+        }
+    }
+}
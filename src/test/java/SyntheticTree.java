@@ -0,0 +1,164 @@
+import ru.vladislav117.fsmanagement.directory.Directory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public final class SyntheticTree {
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    private int fanOut = 4;
+    private int depth = 3;
+    private int filesPerDirectory = 8;
+    private int minFileSize = 0;
+    private int maxFileSize = 1024;
+    private double symlinkRatio = 0;
+    private boolean shortNames = false;
+    private long seed = 42;
+
+    public SyntheticTree setFanOut(int fanOut) {
+        this.fanOut = fanOut;
+        return this;
+    }
+
+    public SyntheticTree setDepth(int depth) {
+        this.depth = depth;
+        return this;
+    }
+
+    public SyntheticTree setFilesPerDirectory(int filesPerDirectory) {
+        this.filesPerDirectory = filesPerDirectory;
+        return this;
+    }
+
+    public SyntheticTree setFileSize(int minFileSize, int maxFileSize) {
+        this.minFileSize = minFileSize;
+        this.maxFileSize = maxFileSize;
+        return this;
+    }
+
+    public SyntheticTree setSymlinkRatio(double symlinkRatio) {
+        this.symlinkRatio = symlinkRatio;
+        return this;
+    }
+
+    public SyntheticTree setShortNames(boolean shortNames) {
+        this.shortNames = shortNames;
+        return this;
+    }
+
+    public SyntheticTree setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public static Directory createTempRoot() {
+        try {
+            return new Directory(Files.createTempDirectory("fsmanagement-synthetic").toFile());
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    public static int scale(int defaultScale) {
+        return Integer.getInteger("fsmanagement.scale", defaultScale);
+    }
+
+    /**
+     * Создание дерева обходом в ширину.
+     * Размеры файлов распределены логарифмически равномерно между границами. Символические ссылки указывают на
+     * случайного предка, поэтому переход по ним образует циклы.
+     * С короткими именами директории называются "0", "1", ..., а файлы "f0", "f1", ..., поэтому каждый уровень
+     * удлиняет путь на два символа и глубина дерева ограничена длиной пути, а не длиной имён.
+     *
+     * @param root Корневая директория
+     * @return Статистика созданного дерева.
+     */
+    public Result generate(Directory root) {
+        Random random = new Random(seed);
+        byte[] block = new byte[BLOCK_SIZE];
+        random.nextBytes(block);
+        Result result = new Result();
+        ArrayDeque<List<Path>> queue = new ArrayDeque<>();
+        List<Path> rootPath = new ArrayList<>();
+        rootPath.add(root.getLocation().toPath());
+        queue.add(rootPath);
+        try {
+            Files.createDirectories(rootPath.get(0));
+            while (!queue.isEmpty()) {
+                List<Path> ancestors = queue.poll();
+                Path directory = ancestors.get(ancestors.size() - 1);
+                for (int i = 0; i < filesPerDirectory; i++) {
+                    int size = fileSize(random);
+                    writeFile(directory.resolve(fileName(i)), block, random.nextInt(BLOCK_SIZE), size);
+                    result.files++;
+                    result.bytes += size;
+                }
+                if (symlinkRatio > 0 && random.nextDouble() < symlinkRatio) {
+                    Path target = ancestors.get(random.nextInt(ancestors.size())).toAbsolutePath();
+                    try {
+                        Files.createSymbolicLink(directory.resolve("link"), target);
+                        result.symlinks++;
+                    } catch (UnsupportedOperationException ignored) {
+                    }
+                }
+                if (ancestors.size() > depth) continue;
+                for (int i = 0; i < fanOut; i++) {
+                    Path child = directory.resolve(directoryName(i));
+                    Files.createDirectory(child);
+                    result.directories++;
+                    List<Path> childAncestors = new ArrayList<>(ancestors);
+                    childAncestors.add(child);
+                    queue.add(childAncestors);
+                }
+            }
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+        return result;
+    }
+
+    private String fileName(int index) {
+        return shortNames ? "f" + Integer.toString(index, 36) : "file" + index + ".bin";
+    }
+
+    private String directoryName(int index) {
+        return shortNames ? Integer.toString(index, 36) : "dir" + index;
+    }
+
+    private int fileSize(Random random) {
+        if (maxFileSize <= minFileSize) return minFileSize;
+        double low = Math.log(minFileSize + 1);
+        double high = Math.log(maxFileSize + 1);
+        return (int) Math.min(maxFileSize, Math.exp(low + random.nextDouble() * (high - low)) - 1);
+    }
+
+    private static void writeFile(Path path, byte[] block, int offset, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            int written = 0;
+            while (written < size) {
+                int start = (offset + written) % block.length;
+                int length = Math.min(size - written, block.length - start);
+                written += channel.write(ByteBuffer.wrap(block, start, length));
+            }
+        }
+    }
+
+    public static final class Result {
+        public long files = 0;
+        public long directories = 0;
+        public long symlinks = 0;
+        public long bytes = 0;
+
+        public long entries() {
+            return files + directories;
+        }
+    }
+}